@@ -0,0 +1,39 @@
+package microbots.core;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the {@link Arena} operations on the simulation hot path. Each invocation visits every
+ * microbot in the arena once, so scores are comparable to {@link SimulationBenchmark#doRound}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArenaBenchmark {
+
+  @Benchmark
+  public void getMicrobotSurroundings(BenchmarkState state, Blackhole blackhole) {
+    Arena arena = state.simulation.arena();
+    for (int microbot = 0; microbot < state.simulation.microbots().size(); microbot++) {
+      blackhole.consume(arena.getMicrobotSurroundings(microbot));
+    }
+  }
+
+  @Benchmark
+  public void moveMicrobot(BenchmarkState state) {
+    Arena arena = state.simulation.arena();
+    for (int microbot = 0; microbot < state.simulation.microbots().size(); microbot++) {
+      arena.moveMicrobot(microbot);
+    }
+  }
+}
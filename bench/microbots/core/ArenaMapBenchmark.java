@@ -0,0 +1,32 @@
+package microbots.core;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures loading and parsing the terrain of each {@link ArenaMap}. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArenaMapBenchmark {
+
+  /** Name of the {@link ArenaMap} to run on. */
+  @Param({"OPEN", "ENCLOSED", "DIAMOND", "QUADRANTS", "CIRCLE"})
+  String arenaMap;
+
+  @Benchmark
+  public TerrainGrid loadTerrain() {
+    return ArenaMap.valueOf(arenaMap).loadTerrain();
+  }
+}
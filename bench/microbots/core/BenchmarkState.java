@@ -0,0 +1,69 @@
+package microbots.core;
+
+import microbots.MicrobotProcessingUnit;
+import microbots.impl.ScrapPile;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Shared JMH state for benchmarks that need a populated arena. Each trial pits {@link #populationSize}
+ * microbots of the {@link #mpu} under test against the same number of {@link ScrapPile
+ * ScrapPiles}, so that hacking and conversion show up in the measurements. A fresh simulation is
+ * built for every iteration, since rounds converge towards a single surviving type.
+ *
+ * <p>Run the suite with {@code java -cp <classpath> org.openjdk.jmh.Main}, optionally passing a
+ * benchmark name filter and {@code -prof gc} for allocation rates.
+ */
+@State(Scope.Thread)
+public class BenchmarkState {
+
+  /** Name of the {@link ArenaMap} to run on. */
+  @Param({"OPEN", "ENCLOSED", "DIAMOND", "QUADRANTS", "CIRCLE"})
+  String arenaMap;
+
+  /**
+   * The number of microbots of each type. The largest value is bounded by the smallest built-in
+   * map, {@link ArenaMap#CIRCLE}, which has room for a little over 4000 microbots. Larger
+   * populations are measured on generated maps by {@link LargePopulationBenchmark}.
+   */
+  @Param({"50", "500", "2000"})
+  int populationSize;
+
+  /** Simple name of the {@link MicrobotProcessingUnit} under test, from {@code microbots.impl}. */
+  @Param({
+    "Hive",
+    "Microbot9000",
+    "Looper1Solution",
+    "Looper2Solution",
+    "Sweeper1Solution",
+    "Sweeper2Solution"
+  })
+  String mpu;
+
+  /** Whether rounds run through the parallel engine. */
+  @Param({"false", "true"})
+  boolean parallel;
+
+  Simulation simulation;
+
+  @Setup(Level.Iteration)
+  public void setUp() throws ClassNotFoundException {
+    simulation =
+        Simulation.builder()
+            .setArenaMap(ArenaMap.valueOf(arenaMap))
+            .setPopulationSize(populationSize)
+            .addMpuType(mpuType(mpu))
+            .addMpuType(ScrapPile.class)
+            .setParallel(parallel)
+            .build();
+  }
+
+  /** Returns the class of the bundled MPU with the given simple name. */
+  static Class<? extends MicrobotProcessingUnit> mpuType(String simpleName)
+      throws ClassNotFoundException {
+    return Class.forName("microbots.impl." + simpleName).asSubclass(MicrobotProcessingUnit.class);
+  }
+}
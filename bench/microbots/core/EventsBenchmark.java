@@ -0,0 +1,73 @@
+package microbots.core;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import java.util.concurrent.TimeUnit;
+import microbots.core.Events.SimulationRoundDoneEvent;
+import microbots.core.Events.SimulationRoundDoneListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-round cost of posting a {@link SimulationRoundDoneEvent} to a single subscriber,
+ * through the listener registry in {@link Events} and, for comparison, through an {@link EventBus}
+ * as every per-round event used to be.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventsBenchmark {
+
+  private final EventBus eventBus = new EventBus();
+  private final RoundCounter roundCounter = new RoundCounter();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    eventBus.register(roundCounter);
+    Events.register(roundCounter);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Events.unregister(roundCounter);
+  }
+
+  @Benchmark
+  public void listeners() {
+    Events.post(SimulationRoundDoneEvent.INSTANCE);
+  }
+
+  @Benchmark
+  public void eventBus() {
+    eventBus.post(SimulationRoundDoneEvent.INSTANCE);
+  }
+
+  /** Counts rounds, whether notified as a listener or as an event bus subscriber. */
+  static final class RoundCounter implements SimulationRoundDoneListener {
+
+    int rounds;
+
+    @Override
+    public void onSimulationRoundDone(SimulationRoundDoneEvent event) {
+      rounds++;
+    }
+
+    @Subscribe
+    public void onSimulationRoundDoneSubscribe(SimulationRoundDoneEvent event) {
+      rounds++;
+    }
+  }
+}
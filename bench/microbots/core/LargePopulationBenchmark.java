@@ -0,0 +1,111 @@
+package microbots.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import microbots.impl.ScrapPile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures complete simulation rounds with populations too large for any built-in map, in rounds
+ * per second. Each trial runs on a {@link MapGenerator#RANDOM_WALLS generated} map that is sized
+ * to the population, so that microbots fill roughly the same fraction of it at every size. Trials
+ * with and without {@link Simulation.Builder#setReplayFile(Path) recording a replay} show what
+ * recording costs a round.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LargePopulationBenchmark {
+
+  @Benchmark
+  public void doRound(LargePopulationState state) {
+    state.simulation.doRound();
+  }
+
+  /**
+   * Like {@link BenchmarkState}, but on a generated map. Each trial pits {@link #populationSize}
+   * microbots of the {@link #mpu} under test against the same number of {@link ScrapPile
+   * ScrapPiles}.
+   */
+  @State(Scope.Thread)
+  public static class LargePopulationState {
+
+    /** The fraction of the generated map covered by walls. */
+    private static final double DENSITY = 0.2;
+
+    /** The number of traversable cells of the generated map per microbot. */
+    private static final int CELLS_PER_MICROBOT = 4;
+
+    private static final long MAP_SEED = 0;
+
+    /** The number of microbots of each type. */
+    @Param({"10000", "100000"})
+    int populationSize;
+
+    /** Simple name of the {@link microbots.MicrobotProcessingUnit} under test. */
+    @Param({
+      "Hive",
+      "Microbot9000",
+      "Looper1Solution",
+      "Looper2Solution",
+      "Sweeper1Solution",
+      "Sweeper2Solution"
+    })
+    String mpu;
+
+    /** Whether rounds run through the parallel engine. */
+    @Param({"false", "true"})
+    boolean parallel;
+
+    /** Whether a replay of the simulation is recorded to a temporary file. */
+    @Param({"false", "true"})
+    boolean recording;
+
+    Simulation simulation;
+
+    private Path replayFile;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws ClassNotFoundException, IOException {
+      int side =
+          (int) Math.ceil(Math.sqrt(2.0 * populationSize * CELLS_PER_MICROBOT / (1 - DENSITY)));
+      Simulation.Builder builder =
+          Simulation.builder()
+              .setTerrain(MapGenerator.RANDOM_WALLS.generate(side, side, DENSITY, MAP_SEED))
+              .setPopulationSize(populationSize)
+              .addMpuType(BenchmarkState.mpuType(mpu))
+              .addMpuType(ScrapPile.class)
+              .setParallel(parallel);
+      if (recording) {
+        replayFile = Files.createTempFile("microbots", ".replay");
+        builder.setReplayFile(replayFile);
+      }
+      simulation = builder.build();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+      simulation.closeReplay();
+      if (replayFile != null) {
+        Files.delete(replayFile);
+        replayFile = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package microbots.core;
+
+import java.util.concurrent.TimeUnit;
+import microbots.impl.ScrapPile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Arena#hackMicrobot(int, int)}, including the population counts and dirty cells
+ * it updates. A successful hack turns the target into a friend, after which further hacks are
+ * no-ops, so each invocation performs a round trip: the {@link #mpu} under test converts the
+ * target, and a {@link ScrapPile} converts it back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MicrobotBenchmark {
+
+  @Param({
+    "Hive",
+    "Microbot9000",
+    "Looper1Solution",
+    "Looper2Solution",
+    "Sweeper1Solution",
+    "Sweeper2Solution"
+  })
+  String mpu;
+
+  private static final int HACKER = 0;
+  private static final int RESTORER = 1;
+  private static final int TARGET = 2;
+
+  private Arena arena;
+
+  @Setup(Level.Trial)
+  public void setUp() throws ClassNotFoundException {
+    MicrobotStore store =
+        MicrobotStore.builder()
+            .add(MicrobotFactory.newMpu(BenchmarkState.mpuType(mpu)), Direction.NORTH)
+            .add(new ScrapPile(), Direction.NORTH)
+            .add(new ScrapPile(), Direction.NORTH)
+            .build();
+    arena =
+        Arena.builder().withTerrain(TerrainGrid.builder(1, 3).build()).withMicrobots(store).build();
+  }
+
+  @Benchmark
+  public void hackRoundTrip() {
+    arena.hackMicrobot(HACKER, TARGET);
+    arena.hackMicrobot(RESTORER, TARGET);
+  }
+
+  /** Baseline: a hack between friends, which only classifies and does not convert. */
+  @Benchmark
+  public void hackFriend() {
+    arena.hackMicrobot(RESTORER, TARGET);
+  }
+}
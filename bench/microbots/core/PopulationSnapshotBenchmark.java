@@ -0,0 +1,29 @@
+package microbots.core;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the cost of taking a {@link PopulationSnapshot}, which the UI does on every repaint. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PopulationSnapshotBenchmark {
+
+  @Benchmark
+  public PopulationSnapshot of(BenchmarkState state) {
+    return PopulationSnapshot.of(state.simulation.arena());
+  }
+
+  @Benchmark
+  public PopulationSnapshot current(BenchmarkState state) {
+    return PopulationSnapshot.current(state.simulation.arena());
+  }
+}
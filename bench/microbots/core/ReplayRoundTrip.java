@@ -0,0 +1,90 @@
+package microbots.core;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import microbots.impl.Hive;
+import microbots.impl.Microbot9000;
+import microbots.impl.Sweeper2Solution;
+
+/**
+ * Checks that replays read back to the state that the simulation which recorded them ended in. Runs
+ * a seeded headless battle with a replay on each engine, plays the replay back with {@link
+ * ReplayReader}, and compares the number of rounds, the MPU types, and the type, facing and cell of
+ * every microbot. Exits with a non-zero status if anything differs, or if the replay breaks the
+ * rules of the simulation.
+ *
+ * <p>Run with {@code java -cp <classpath> microbots.core.ReplayRoundTrip}.
+ */
+public final class ReplayRoundTrip {
+
+  private static final long SEED = 42;
+  private static final int POPULATION_SIZE = 2000;
+  private static final int MAX_ROUNDS = 1000;
+
+  // Not intended for instantiation.
+  private ReplayRoundTrip() {}
+
+  public static void main(String[] args) throws Exception {
+    boolean failed = false;
+    for (boolean parallel : new boolean[] {false, true}) {
+      String engine = parallel ? "Parallel" : "Serial";
+      try {
+        System.out.printf("%s engine: %s rounds replayed OK.%n", engine, check(parallel));
+      } catch (AssertionError | IllegalArgumentException e) {
+        System.out.printf("%s engine: %s%n", engine, e.getMessage());
+        failed = true;
+      }
+    }
+    if (failed) {
+      System.exit(1);
+    }
+  }
+
+  /** Runs and checks a battle on the given engine, and returns the number of rounds it took. */
+  private static int check(boolean parallel) throws Exception {
+    Path replayFile = Files.createTempFile("microbots", ".replay");
+    try {
+      Simulation simulation =
+          Simulation.builder()
+              .setTerrain(MapGenerator.CAVES.generate(200, 200, 0.45, SEED))
+              .setPopulationSize(POPULATION_SIZE)
+              .addMpuType(Hive.class)
+              .addMpuType(Microbot9000.class)
+              .addMpuType(Sweeper2Solution.class)
+              .setSeed(SEED)
+              .setParallel(parallel)
+              .setReplayFile(replayFile)
+              .build();
+      SimulationResult result = simulation.runHeadless(MAX_ROUNDS);
+      ReplayReader replay = ReplayReader.read(replayFile);
+
+      check(replay.rounds() == result.roundsExecuted(), "rounds differ");
+      MicrobotStore microbots = simulation.microbots();
+      check(replay.microbotCount() == microbots.size(), "microbot counts differ");
+      check(
+          replay
+              .mpuTypeNames()
+              .equals(microbots.mpuTypes().stream().map(Class::getName).collect(toImmutableList())),
+          "MPU types differ");
+      for (int microbot = 0; microbot < microbots.size(); microbot++) {
+        check(
+            replay.mpuTypeId(microbot) == microbots.mpuTypeId(microbot)
+                && replay.facing(microbot) == microbots.facing(microbot)
+                && replay.cell(microbot) == microbots.cell(microbot),
+            "microbot %s differs",
+            microbot);
+      }
+      return replay.rounds();
+    } finally {
+      Files.delete(replayFile);
+    }
+  }
+
+  private static void check(boolean condition, String message, Object... args) {
+    if (!condition) {
+      throw new AssertionError(String.format(message, args));
+    }
+  }
+}
@@ -8,6 +8,15 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public final class State {
 
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  /**
+   * Every possible state, indexed by facing direction and then by {@link Surroundings#index()}.
+   * States are immutable, so the simulation hands out these shared instances rather than allocating
+   * new ones for every microbot on every round.
+   */
+  private static final State[] CANONICAL_STATES = createCanonicalStates();
+
   private final Direction facingDirection;
   private final Surroundings surroundings;
   private final Obstacle[] obstacles;
@@ -42,8 +51,29 @@ public final class State {
     //   * Direction.values() are ordered: NORTH -> EAST -> SOUTH -> WEST
     //   * this.obstacles is ordered: front -> right -> back -> left
     int index =
-        (direction.ordinal() - facingDirection.ordinal() + Direction.values().length)
-            % Direction.values().length;
+        (direction.ordinal() - facingDirection.ordinal() + DIRECTIONS.length) % DIRECTIONS.length;
     return obstacles[index];
   }
+
+  /**
+   * Returns the shared instance of the state with the given facing direction and surroundings.
+   * Unlike the constructor, this never allocates.
+   */
+  public static State of(Direction facingDirection, Surroundings surroundings) {
+    int index = facingDirection.ordinal() * Surroundings.count() + surroundings.index();
+    return CANONICAL_STATES[index];
+  }
+
+  /** Creates every possible state, ordered by facing direction and then surroundings index. */
+  private static State[] createCanonicalStates() {
+    State[] states = new State[DIRECTIONS.length * Surroundings.count()];
+    for (Direction facingDirection : DIRECTIONS) {
+      for (int i = 0; i < Surroundings.count(); i++) {
+        Surroundings surroundings = Surroundings.canonical(i);
+        states[facingDirection.ordinal() * Surroundings.count() + i] =
+            new State(facingDirection, surroundings);
+      }
+    }
+    return states;
+  }
 }
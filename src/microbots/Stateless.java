@@ -0,0 +1,23 @@
+package microbots;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that a {@link MicrobotProcessingUnit} holds no state, i.e. that its {@link
+ * MicrobotProcessingUnit#getAction(State) actions} depend only on the {@link State} it is given.
+ * The simulation then shares a single instance of the MPU among all of the microbots of its type,
+ * rather than creating one for every microbot and for every hack, which saves memory and time in
+ * large battles.
+ *
+ * <p>Only annotate an MPU that has no fields which change after construction. The shared instance
+ * may be called by several threads at once, e.g. in parallel simulations. The annotation is not
+ * inherited, so subclasses of a stateless MPU must declare it themselves.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Stateless {}
@@ -8,16 +8,27 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public final class Surroundings {
 
+  private static final Obstacle[] OBSTACLES = Obstacle.values();
+
+  /**
+   * Every possible combination of surroundings, indexed by {@link #index(Obstacle, Obstacle,
+   * Obstacle, Obstacle)}. Surroundings are immutable, so the simulation hands out these canonical
+   * instances rather than allocating new ones for every microbot on every round.
+   */
+  private static final Surroundings[] CANONICAL_SURROUNDINGS = createCanonicalSurroundings();
+
   private final Obstacle front;
   private final Obstacle left;
   private final Obstacle right;
   private final Obstacle back;
+  private final int index;
 
   public Surroundings(Obstacle front, Obstacle left, Obstacle right, Obstacle back) {
     this.front = checkNotNull(front);
     this.left = checkNotNull(left);
     this.right = checkNotNull(right);
     this.back = checkNotNull(back);
+    this.index = index(front, left, right, back);
   }
 
   /** The {@link Obstacle} immediately in front of the microbot. */
@@ -39,4 +50,51 @@ public final class Surroundings {
   public Obstacle back() {
     return back;
   }
+
+  /** Returns the number of distinct surroundings that exist. */
+  static int count() {
+    return CANONICAL_SURROUNDINGS.length;
+  }
+
+  /** Returns a unique index for these surroundings in the range {@code [0, count())}. */
+  int index() {
+    return index;
+  }
+
+  /** Returns the canonical surroundings with the given {@link #index()}. */
+  static Surroundings canonical(int index) {
+    return CANONICAL_SURROUNDINGS[index];
+  }
+
+  /**
+   * Returns the canonical instance of the surroundings with the given obstacles. Unlike the
+   * constructor, this never allocates.
+   */
+  public static Surroundings of(Obstacle front, Obstacle left, Obstacle right, Obstacle back) {
+    return CANONICAL_SURROUNDINGS[index(front, left, right, back)];
+  }
+
+  /** Packs the ordinals of the given obstacles into a single index. */
+  private static int index(Obstacle front, Obstacle left, Obstacle right, Obstacle back) {
+    int base = OBSTACLES.length;
+    return ((front.ordinal() * base + left.ordinal()) * base + right.ordinal()) * base
+        + back.ordinal();
+  }
+
+  /** Creates every possible combination of surroundings, ordered by index. */
+  private static Surroundings[] createCanonicalSurroundings() {
+    int base = OBSTACLES.length;
+    Surroundings[] surroundings = new Surroundings[base * base * base * base];
+    for (Obstacle front : OBSTACLES) {
+      for (Obstacle left : OBSTACLES) {
+        for (Obstacle right : OBSTACLES) {
+          for (Obstacle back : OBSTACLES) {
+            surroundings[index(front, left, right, back)] =
+                new Surroundings(front, left, right, back);
+          }
+        }
+      }
+    }
+    return surroundings;
+  }
 }
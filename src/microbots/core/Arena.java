@@ -2,80 +2,165 @@ package microbots.core;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableTable;
-import com.google.common.collect.Table;
-import java.util.Optional;
+import com.google.common.collect.ImmutableMap;
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import microbots.MicrobotProcessingUnit;
 import microbots.Obstacle;
 import microbots.Surroundings;
 
-/** The arena is where microbots do battle. */
+/**
+ * The arena is where microbots do battle. Microbots are identified by their ID in the arena's
+ * {@link MicrobotStore}.
+ *
+ * <p>An arena, and the microbots in it, are confined to the thread running the simulation, which
+ * mutates them without locking. Other threads only see the state that the simulation {@link
+ * #publishFrame() publishes} between rounds, through {@link #frames()} and {@link
+ * PopulationCounts#publishedSize(PopulationCounts.Counter)}, along with the parts of the arena that
+ * never change, such as its {@link #terrain()} and {@link #mpuTypes()}.
+ */
 final class Arena {
 
-  private final Table<Integer, Integer, Microbot> microbots;
-  private final ImmutableTable<Integer, Integer, Terrain> terrain;
-  private final ArenaMap arenaMap;
+  /** The value of an unoccupied cell in {@link #grid}. */
+  private static final int NO_MICROBOT = -1;
+
+  private static final int DIRECTION_COUNT = Direction.values().length;
+
+  private final MicrobotStore microbots;
+  private final ImmutableMap<Class<? extends MicrobotProcessingUnit>, Color> mpuTypes;
+  private final PopulationCounts populationCounts;
+  private final DirtyCells dirtyCells;
+
+  /** The frames handed to the UI, or else null if the arena is never drawn. */
+  private final ArenaFrames frames;
+
+  /** The ID of the microbot in each cell, or {@link #NO_MICROBOT}, indexed by flat cell index. */
+  private final int[] grid;
+
+  private final TerrainGrid terrain;
 
   private Arena(
-      Table<Integer, Integer, Microbot> microbots,
-      ImmutableTable<Integer, Integer, Terrain> terrain,
-      ArenaMap arenaMap) {
+      MicrobotStore microbots,
+      PopulationCounts populationCounts,
+      DirtyCells dirtyCells,
+      ArenaFrames frames,
+      int[] grid,
+      TerrainGrid terrain) {
     this.microbots = microbots;
+    this.mpuTypes = colorsByMpuType(microbots);
+    this.populationCounts = populationCounts;
+    this.dirtyCells = dirtyCells;
+    this.frames = frames;
+    this.grid = grid;
     this.terrain = terrain;
-    this.arenaMap = arenaMap;
   }
 
   /** Returns the number of rows in this arena. */
   int rows() {
-    return arenaMap.rows();
+    return terrain.rows();
   }
 
   /** Returns the number of columns in this arena. */
   int columns() {
-    return arenaMap.columns();
+    return terrain.columns();
   }
 
-  /** Returns all of the microbots currently in this arena. */
-  ImmutableSet<Microbot> microbots() {
-    synchronized (microbots) {
-      return ImmutableSet.copyOf(microbots.values());
-    }
+  /**
+   * Returns the color of each MPU type in this arena, in order of their type IDs as encoded in
+   * {@link #cellState(int, Direction) cell states}. Hacking only ever converts microbots to a type
+   * that is already present, so the set of types is fixed at construction time.
+   */
+  ImmutableMap<Class<? extends MicrobotProcessingUnit>, Color> mpuTypes() {
+    return mpuTypes;
+  }
+
+  /** Returns the live population count of each microbot type in this arena. */
+  PopulationCounts populationCounts() {
+    return populationCounts;
+  }
+
+  /**
+   * Returns the frames through which this arena's visible state is handed to the UI. Must not be
+   * called on an arena built {@link Builder#withView(boolean) without a view}.
+   */
+  ArenaFrames frames() {
+    checkState(frames != null, "Arena was built without a view.");
+    return frames;
   }
 
   /** Returns this arena's terrain. */
-  ImmutableTable<Integer, Integer, Terrain> terrain() {
+  TerrainGrid terrain() {
     return terrain;
   }
 
   /**
-   * Returns the microbot in the adjacent cell in the direction that the given microbot is facing,
-   * or else {@link Optional#empty()} if that cell is unoccupied.
+   * Returns the ID of the microbot in the adjacent cell in the direction that the given microbot is
+   * facing, or else {@link #NO_MICROBOT} if that cell is unoccupied.
    */
-  Optional<Microbot> getFacedMicrobot(Microbot microbot) {
-    Direction direction = microbot.facing();
-    return microbotAt(
-        microbot.row() + direction.rowOffset(), microbot.column() + direction.columnOffset());
+  private int getFacedMicrobot(int microbot) {
+    int facedCell = terrain.neighbor(microbots.cell(microbot), microbots.facing(microbot));
+    return facedCell == TerrainGrid.WALL ? NO_MICROBOT : grid[facedCell];
+  }
+
+  /**
+   * Has the given microbot hack the microbot in the adjacent cell in the direction it is facing,
+   * if there is one, and updates the {@link #populationCounts()} if the hack converts it. Returns
+   * whether it did.
+   */
+  boolean hackFacedMicrobot(int microbot) {
+    int other = getFacedMicrobot(microbot);
+    return other != NO_MICROBOT && hackMicrobot(microbot, other);
+  }
+
+  /**
+   * Has the {@code hacker} microbot hack the {@code target}, wherever they are, converting the
+   * target to the hacker's MPU type unless they already have the same one, and updates the {@link
+   * #populationCounts()} if it does. Returns whether the target was converted. Every conversion
+   * goes through here, so that the counts cannot drift from the microbots themselves.
+   */
+  boolean hackMicrobot(int hacker, int target) {
+    if (microbots.classify(hacker, target) != Obstacle.ENEMY) {
+      return false;
+    }
+    String targetName = microbots.name(target);
+    microbots.hack(hacker, target);
+    populationCounts.recordConversion(targetName, microbots.name(hacker));
+    dirtyCells.mark(microbots.cell(target));
+    return true;
+  }
+
+  /** Rotates the given microbot 90 degrees counterclockwise. */
+  void rotateMicrobotLeft(int microbot) {
+    microbots.rotateLeft(microbot);
+    dirtyCells.mark(microbots.cell(microbot));
+  }
+
+  /** Rotates the given microbot 90 degrees clockwise. */
+  void rotateMicrobotRight(int microbot) {
+    microbots.rotateRight(microbot);
+    dirtyCells.mark(microbots.cell(microbot));
   }
 
   /**
    * Moves the given microbot one cell in the direction it is currently facing, provided that the
-   * destination cell is unoccupied and is within the bounds of the arena.
+   * destination cell is unoccupied and traversable. Returns whether it did.
    */
-  void moveMicrobot(Microbot microbot) {
-    checkNotNull(microbot);
-    Direction direction = microbot.facing();
-    synchronized (microbots) {
-      if (getObstacleRelativeToMicrobot(microbot, direction) == Obstacle.NONE) {
-        microbots.remove(microbot.row(), microbot.column());
-        microbot.setPosition(
-            normalizeRow(microbot.row() + direction.rowOffset()),
-            normalizeColumn(microbot.column() + direction.columnOffset()));
-        microbots.put(microbot.row(), microbot.column(), microbot);
-      }
+  boolean moveMicrobot(int microbot) {
+    int fromCell = microbots.cell(microbot);
+    int toCell = terrain.neighbor(fromCell, microbots.facing(microbot));
+    if (toCell == TerrainGrid.WALL || grid[toCell] != NO_MICROBOT) {
+      return false;
     }
+    grid[fromCell] = NO_MICROBOT;
+    grid[toCell] = microbot;
+    microbots.setCell(microbot, toCell);
+    dirtyCells.mark(fromCell);
+    dirtyCells.mark(toCell);
+    return true;
   }
 
   /**
@@ -84,54 +169,86 @@ final class Arena {
    * returned surroundings are oriented relative to the direction the microbot is facing, i.e. they
    * use the terms "front" and "back" rather than "north" and "south".
    */
-  Surroundings getMicrobotSurroundings(Microbot microbot) {
-    checkNotNull(microbot);
-    return new Surroundings(
-        getObstacleRelativeToMicrobot(microbot, microbot.facing()), // front
-        getObstacleRelativeToMicrobot(microbot, microbot.facing().clockwise270()), // left
-        getObstacleRelativeToMicrobot(microbot, microbot.facing().clockwise90()), // right
-        getObstacleRelativeToMicrobot(microbot, microbot.facing().clockwise180())); // back
+  Surroundings getMicrobotSurroundings(int microbot) {
+    int cell = microbots.cell(microbot);
+    Direction facing = microbots.facing(microbot);
+    return Surroundings.of(
+        getObstacle(microbot, terrain.neighbor(cell, facing)), // front
+        getObstacle(microbot, terrain.neighbor(cell, facing.clockwise270())), // left
+        getObstacle(microbot, terrain.neighbor(cell, facing.clockwise90())), // right
+        getObstacle(microbot, terrain.neighbor(cell, facing.clockwise180()))); // back
   }
 
-  /** Returns the obstacle in the given direction relative to the indicated microbot. */
-  private Obstacle getObstacleRelativeToMicrobot(Microbot microbot, Direction direction) {
-    int otherRow = microbot.row() + direction.rowOffset();
-    int otherColumn = microbot.column() + direction.columnOffset();
-
-    if (!terrainAt(otherRow, otherColumn).isTraversable()) {
+  /**
+   * Returns the obstacle that the given neighbor cell, as returned by {@link
+   * TerrainGrid#neighbor(int, Direction)}, presents to the indicated microbot.
+   */
+  private Obstacle getObstacle(int microbot, int neighborCell) {
+    if (neighborCell == TerrainGrid.WALL) {
       return Obstacle.WALL;
     }
-
-    return microbotAt(otherRow, otherColumn).map(microbot::classify).orElse(Obstacle.NONE);
+    int other = grid[neighborCell];
+    return other == NO_MICROBOT ? Obstacle.NONE : microbots.classify(microbot, other);
   }
 
   /**
-   * Returns the microbot located at the specified position, or else {@link Optional#empty()} if the
-   * position is unoccupied.
+   * Captures the current state of every cell into a new {@link ArenaFrames frame} for the UI to
+   * draw, and {@link PopulationCounts#publish() publishes} the population counts along with it. If
+   * the UI has not yet taken the previous frame, nothing is published, and the changes since that
+   * frame are carried over to the next one instead. Must be called on the simulation thread,
+   * between rounds, and not on an arena built {@link Builder#withView(boolean) without a view}.
    */
-  private Optional<Microbot> microbotAt(int row, int column) {
-    return Optional.ofNullable(microbots.get(normalizeRow(row), normalizeColumn(column)));
+  void publishFrame() {
+    ArenaFrames.Frame frame = frames().backBuffer();
+    if (frame == null) {
+      return;
+    }
+
+    BitSet changedCells = frame.changedCells();
+    dirtyCells.transferTo(changedCells);
+
+    // The back buffer still holds the frame before last, so bring it up to date with the changes
+    // published since then as well as with the changes made since.
+    int[] cellStates = frame.cellStates();
+    updateCellStates(cellStates, changedCells);
+    ArenaFrames.Frame lastPublished = frames.lastPublished();
+    if (lastPublished != null) {
+      updateCellStates(cellStates, lastPublished.changedCells());
+    }
+
+    populationCounts.publish();
+    frames.publish(frame);
   }
 
-  /** Returns the terrain located at the specified position. */
-  private Terrain terrainAt(int row, int column) {
-    return terrain.get(normalizeRow(row), normalizeColumn(column));
+  /** Sets the state in {@code cellStates} of each of the given cells to its current value. */
+  private void updateCellStates(int[] cellStates, BitSet cells) {
+    for (int cell = cells.nextSetBit(0); cell >= 0; cell = cells.nextSetBit(cell + 1)) {
+      int microbot = grid[cell];
+      cellStates[cell] =
+          microbot == NO_MICROBOT
+              ? ArenaFrames.EMPTY
+              : cellState(microbots.mpuTypeId(microbot), microbots.facing(microbot));
+    }
   }
 
   /**
-   * Normalizes the given row so that it is guaranteed to be in the bounds of this arena. This works
-   * as long as the given row is in the interval {@code [-rows(),Integer.MAX_VALUE]}.
+   * Returns the state of a cell occupied by a microbot with the given MPU type ID, facing in the
+   * given direction. Cell states are dense and positive, so they can be used to index a table of
+   * sprites; {@link ArenaFrames#EMPTY} is reserved for unoccupied cells.
    */
-  private int normalizeRow(int row) {
-    return (row + rows()) % rows();
+  static int cellState(int mpuTypeId, Direction facing) {
+    return 1 + mpuTypeId * DIRECTION_COUNT + facing.ordinal();
   }
 
-  /**
-   * Normalizes the given column so that it is guaranteed to be in the bounds of this arena. This
-   * works as long as the given column is in the interval {@code [-columns(),Integer.MAX_VALUE]}.
-   */
-  private int normalizeColumn(int column) {
-    return (column + columns()) % columns();
+  /** Returns the color of each MPU type in the given store, in order of MPU type ID. */
+  private static ImmutableMap<Class<? extends MicrobotProcessingUnit>, Color> colorsByMpuType(
+      MicrobotStore microbots) {
+    ImmutableMap.Builder<Class<? extends MicrobotProcessingUnit>, Color> colors =
+        ImmutableMap.builder();
+    for (int mpuTypeId = 0; mpuTypeId < microbots.mpuTypes().size(); mpuTypeId++) {
+      colors.put(microbots.mpuTypes().get(mpuTypeId), microbots.mpuColor(mpuTypeId));
+    }
+    return colors.build();
   }
 
   /** Returns a new {@link Builder} for constructing arenas. */
@@ -142,57 +259,92 @@ final class Arena {
   /** Builder class for creating arena instances. */
   static final class Builder {
 
-    private ArenaMap map;
-    private ImmutableList<Microbot> microbots = ImmutableList.of();
+    private TerrainGrid terrain;
+    private MicrobotStore microbots = MicrobotStore.builder().build();
+    private SplittableRandom random = new SplittableRandom();
+    private boolean view = true;
 
+    /** Sets the map whose terrain the arena is laid out on. */
     Builder withMap(ArenaMap map) {
-      this.map = checkNotNull(map);
+      return withTerrain(map.terrain());
+    }
+
+    /** Sets the terrain that the arena is laid out on. */
+    Builder withTerrain(TerrainGrid terrain) {
+      this.terrain = checkNotNull(terrain);
       return this;
     }
 
     /** Sets the microbots that will participate in the simulation. */
-    Builder withMicrobots(ImmutableList<Microbot> microbots) {
+    Builder withMicrobots(MicrobotStore microbots) {
       this.microbots = checkNotNull(microbots);
       return this;
     }
 
+    /** Sets the source of randomness used to place microbots in the arena. */
+    Builder withRandom(SplittableRandom random) {
+      this.random = checkNotNull(random);
+      return this;
+    }
+
+    /**
+     * Sets whether the arena keeps the state needed to draw it, i.e. its {@link ArenaFrames frames}
+     * and a record of which cells changed. Arenas that are never shown in a window, such as those
+     * of headless simulations, can do without. Defaults to true.
+     */
+    Builder withView(boolean view) {
+      this.view = view;
+      return this;
+    }
+
     /** Returns a new arena instance. */
     Arena build() {
-      checkNotNull(map);
+      checkNotNull(terrain);
       checkArgument(
-          map.traversableSpaceCount() >= microbots.size(),
+          terrain.traversableCount() >= microbots.size(),
           "Arena has only %d traversable spaces, which is not enough to accommodate %d microbots.",
-          map.traversableSpaceCount(),
+          terrain.traversableCount(),
           microbots.size());
 
-      Table<Integer, Integer, Microbot> grid = HashBasedTable.create();
-      ImmutableTable<Integer, Integer, Terrain> terrain = map.terrain();
-      microbots.forEach(microbot -> placeMicrobot(microbot, grid, terrain));
+      int[] grid = new int[terrain.cellCount()];
+      Arrays.fill(grid, NO_MICROBOT);
+      placeMicrobots(grid, terrain);
 
-      return new Arena(grid, terrain, map);
+      return new Arena(
+          microbots,
+          PopulationCounts.of(microbots.microbots()),
+          view ? new DirtyCells(grid.length) : DirtyCells.NONE,
+          view ? new ArenaFrames(grid.length) : null,
+          grid,
+          terrain);
     }
 
     /**
-     * Places the given microbot in a random location on the grid. All microbots are placed in a
-     * position such that the corresponding location in the terrain is {@link
+     * Places each microbot in a distinct, random location on the grid. All microbots are placed in
+     * a position such that the corresponding location in the terrain is {@link
      * Terrain#isTraversable() traversable}.
+     *
+     * <p>This runs a partial Fisher-Yates shuffle over the traversable cells, stopping once every
+     * microbot has a cell. The cost is linear in the size of the map and the number of microbots,
+     * no matter how densely populated the arena is.
      */
-    private void placeMicrobot(
-        Microbot microbot,
-        Table<Integer, Integer, Microbot> grid,
-        Table<Integer, Integer, Terrain> terrain) {
-      int row = 0;
-      int column = 0;
-
-      // This approach becomes inefficient as the ratio of microbots to arena cells approaches 1.
-      // Consider refactoring if arenas are not sparsely populated.
-      while (grid.contains(row, column) || !terrain.get(row, column).isTraversable()) {
-        row = (int) (map.rows() * Math.random());
-        column = (int) (map.columns() * Math.random());
+    private void placeMicrobots(int[] grid, TerrainGrid terrain) {
+      int[] cells = new int[terrain.traversableCount()];
+      for (int cell = 0, i = 0; cell < terrain.cellCount(); cell++) {
+        if (terrain.isTraversable(cell)) {
+          cells[i++] = cell;
+        }
       }
 
-      microbot.setPosition(row, column);
-      grid.put(row, column, microbot);
+      for (int microbot = 0; microbot < microbots.size(); microbot++) {
+        int j = microbot + random.nextInt(cells.length - microbot);
+        int cell = cells[j];
+        cells[j] = cells[microbot];
+        cells[microbot] = cell;
+
+        microbots.setCell(microbot, cell);
+        grid[cell] = microbot;
+      }
     }
   }
 }
@@ -0,0 +1,103 @@
+package microbots.core;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the visible state of an {@link Arena} from the simulation thread to the UI thread without
+ * locking either of them. The state is captured in {@link Frame frames}, of which there are exactly
+ * two: at any time the UI owns at most one (the frame it last drew) and the simulation writes only
+ * into the other.
+ *
+ * <p>The simulation {@link #publish() publishes} a frame at the end of a round, but only once the
+ * UI has {@link #takeLatest() taken} the previous one; until then, rounds go unpublished and their
+ * changes accumulate into the next frame. This lets the simulation run at its own pace while the UI
+ * draws at its own, skipping whatever rounds it did not have time for. The handoff goes through a
+ * single {@link AtomicReference}, which also guarantees that the UI sees a frame's contents exactly
+ * as they were when it was published.
+ */
+final class ArenaFrames {
+
+  /** The {@link Frame#cellState(int) cell state} of an unoccupied cell. */
+  static final int EMPTY = 0;
+
+  private final Frame[] frames;
+  private final AtomicReference<Frame> latest = new AtomicReference<>();
+
+  /** The frame most recently published. Only accessed by the simulation thread. */
+  private Frame lastPublished;
+
+  ArenaFrames(int cellCount) {
+    this.frames = new Frame[] {new Frame(cellCount), new Frame(cellCount)};
+  }
+
+  /**
+   * Returns the frame that the simulation may write into for its next publication, or else null if
+   * the UI has not yet taken the previously published frame. The returned frame holds the contents
+   * it was last published with, if any; everything that changed since then is recorded in the
+   * {@link Frame#changedCells() changed cells} of {@link #lastPublished()} and in the arena's dirty
+   * cells. Must be called on the simulation thread.
+   */
+  Frame backBuffer() {
+    if (latest.get() != null) {
+      return null;
+    }
+    return frames[0] == lastPublished ? frames[1] : frames[0];
+  }
+
+  /**
+   * Returns the frame most recently published, or else null if none has been. Must be called on the
+   * simulation thread.
+   */
+  Frame lastPublished() {
+    return lastPublished;
+  }
+
+  /**
+   * Publishes the frame most recently returned by {@link #backBuffer()}. Must be called on the
+   * simulation thread.
+   */
+  void publish(Frame frame) {
+    lastPublished = frame;
+    latest.set(frame);
+  }
+
+  /**
+   * Returns the most recently published frame if the UI has not taken it yet, or else null. The
+   * returned frame remains valid until the next call.
+   */
+  Frame takeLatest() {
+    return latest.getAndSet(null);
+  }
+
+  /** A capture of the visible state of every cell in the arena. */
+  static final class Frame {
+
+    private final int[] cellStates;
+    private final BitSet changedCells;
+
+    private Frame(int cellCount) {
+      this.cellStates = new int[cellCount];
+      this.changedCells = new BitSet(cellCount);
+    }
+
+    /**
+     * Returns the state of the cell with the given flat index: {@link #EMPTY} if it is unoccupied,
+     * or else a value that identifies the occupant's MPU type and facing. See {@link
+     * Arena#cellState(int, Direction)}.
+     */
+    int cellState(int cell) {
+      return cellStates[cell];
+    }
+
+    /** Returns the cells that changed since the previously published frame. */
+    BitSet changedCells() {
+      return changedCells;
+    }
+
+    /** Returns the array backing {@link #cellState(int)}, for the simulation thread to fill. */
+    int[] cellStates() {
+      return cellStates;
+    }
+  }
+}
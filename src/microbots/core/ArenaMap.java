@@ -2,12 +2,12 @@ package microbots.core;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
-import com.google.common.collect.ImmutableTable;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
 import java.awt.event.KeyEvent;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.function.Supplier;
 
 /** An {@link ArenaMap} is a preconfigured arrangement of {@link Terrain}. */
 enum ArenaMap {
@@ -20,23 +20,28 @@ enum ArenaMap {
    * The enclosed map is open everywhere except along the borders. This prevents microbots from
    * wrapping around.
    */
-  ENCLOSED(75, 100, "Enclosed", KeyEvent.VK_E, "enclosed.txt"),
+  ENCLOSED(75, 100, "Enclosed", KeyEvent.VK_E, "enclosed.map"),
 
   /** The diamond map has a diamond-shaped obstruction in the center of the map. */
-  DIAMOND(75, 100, "Diamond", KeyEvent.VK_D, "diamond.txt"),
+  DIAMOND(75, 100, "Diamond", KeyEvent.VK_D, "diamond.map"),
 
   /** The quadrant map is divided into four regions with a connecting area in the middle. */
-  QUADRANTS(75, 100, "Quadrants", KeyEvent.VK_Q, "quadrants.txt"),
+  QUADRANTS(75, 100, "Quadrants", KeyEvent.VK_Q, "quadrants.map"),
 
   /** The circle map is just a circular shaped map... Like a petri dish. */
-  CIRCLE(75, 100, "Circle", KeyEvent.VK_C, "circle.txt");
+  CIRCLE(75, 100, "Circle", KeyEvent.VK_C, "circle.map");
 
   private final int rows;
   private final int columns;
   private final String description;
   private final int mnemonic;
   private final String filename;
-  private final ImmutableTable<Integer, Integer, Terrain> terrain;
+
+  /**
+   * This map's terrain, which is loaded the first time it is needed rather than when the enum is
+   * initialized, so that only the maps actually in use are ever read and parsed.
+   */
+  private final Supplier<TerrainGrid> terrain = Suppliers.memoize(this::loadTerrain);
 
   ArenaMap(int rows, int columns, String description, int mnemonic, String filename) {
     this.rows = rows;
@@ -44,7 +49,6 @@ enum ArenaMap {
     this.description = description;
     this.mnemonic = mnemonic;
     this.filename = filename;
-    this.terrain = loadTerrain();
   }
 
   /** Returns the number of rows in this map. */
@@ -69,71 +73,52 @@ enum ArenaMap {
     return mnemonic;
   }
 
-  /** Returns this map's terrain. */
-  ImmutableTable<Integer, Integer, Terrain> terrain() {
-    return terrain;
+  /** Returns this map's terrain, loading it if this is the first time it is needed. */
+  TerrainGrid terrain() {
+    return terrain.get();
   }
 
   /**
    * Returns the number of spaces on this map that are {@link Terrain#isTraversable() traversable}.
    */
   int traversableSpaceCount() {
-    return (int) terrain.values().stream().filter(Terrain::isTraversable).count();
+    return terrain().traversableCount();
   }
 
   /**
-   * Loads and returns the terrain in this map as a table. If this map's filename is non-null, then
-   * the terrain is read from the indicated file. Otherwise, a simple map is created, populated
-   * exclusively with {@link Terrain#FIELD fields}.
+   * Loads and returns the terrain in this map as a grid. If this map's filename is non-null, then
+   * the terrain is read from the indicated file, which is in the {@link BinaryTerrainFormat binary
+   * map format} and so needs no parsing, though every cell is still checked once as it is loaded.
+   * Otherwise, a simple map is created, populated exclusively with {@link Terrain#FIELD fields}.
    */
-  private ImmutableTable<Integer, Integer, Terrain> loadTerrain() {
+  @VisibleForTesting
+  TerrainGrid loadTerrain() {
     return filename == null ? createSimpleMap() : createComplexMap();
   }
 
   /** Returns a simple map consisting only of {@link Terrain#FIELD fields}. */
-  private ImmutableTable<Integer, Integer, Terrain> createSimpleMap() {
-    ImmutableTable.Builder<Integer, Integer, Terrain> builder = ImmutableTable.builder();
-    for (int r = 0; r < rows; r++) {
-      for (int c = 0; c < columns; c++) {
-        builder.put(r, c, Terrain.FIELD);
-      }
-    }
-    return builder.build();
+  private TerrainGrid createSimpleMap() {
+    return TerrainGrid.builder(rows, columns).build();
   }
 
-  /** Returns a "complex" map, loaded from this map's filename. */
-  private ImmutableTable<Integer, Integer, Terrain> createComplexMap() {
-    ImmutableTable.Builder<Integer, Integer, Terrain> builder = ImmutableTable.builder();
+  /**
+   * Returns a "complex" map, loaded from this map's filename. The built-in maps are kept in the
+   * {@link BinaryTerrainFormat binary format}, converted from the text maps of the same names.
+   */
+  private TerrainGrid createComplexMap() {
     Path path = Paths.get(System.getProperty("user.dir"), "res", "maps", filename);
     try {
-      List<String> lines = Files.readAllLines(path);
-      checkArgument(lines.size() == rows, "Map has %d rows, expected %d.", lines.size(), rows);
-
-      for (int row = 0; row < rows; row++) {
-        addLineToTerrain(lines.get(row), row, builder);
-      }
-
-      return builder.build();
+      TerrainGrid terrain = TerrainGrid.load(path);
+      checkArgument(
+          terrain.rows() == rows && terrain.columns() == columns,
+          "Map is %sx%s, expected %sx%s.",
+          terrain.rows(),
+          terrain.columns(),
+          rows,
+          columns);
+      return terrain;
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
-
-  /** Parses a single line from a map file and adds it to the specified terrain table builder. */
-  private void addLineToTerrain(
-      String line, int row, ImmutableTable.Builder<Integer, Integer, Terrain> builder) {
-    checkArgument(
-        line.length() == columns, "Map row has length %d, expected %d.", line.length(), columns);
-
-    for (int column = 0; column < columns; column++) {
-      char symbol = line.charAt(column);
-      Terrain terrain =
-          Terrain.forSymbol(symbol)
-              .orElseThrow(
-                  () ->
-                      new RuntimeException(
-                          String.format("No such terrain exists with symbol '%s'.", symbol)));
-      builder.put(row, column, terrain);
-    }
-  }
 }
@@ -13,17 +13,21 @@ import static microbots.core.UIConstants.MICROBOT_SIZE_PX;
 import static microbots.core.UIConstants.WALL_COLOR;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableTable;
+import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.RenderingHints;
 import java.awt.Shape;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
+import microbots.MicrobotProcessingUnit;
 
 /** Shows the positions of the microbots in the arena. */
 final class ArenaView extends View {
@@ -32,56 +36,124 @@ final class ArenaView extends View {
       ImmutableMap.of(Terrain.WALL, ArenaView::createWallImage);
   private static final ImmutableMap<Terrain, BufferedImage> TERRAIN_IMAGES = createTerrainImages();
 
-  private static HashMap<Class<?>, BufferedImage> MICROBOT_IMAGES = new HashMap<>();
+  /**
+   * Sprite atlas of microbot images, keyed by MPU type. Each entry holds one image per {@link
+   * Direction}, indexed by ordinal, so drawing a microbot is a single untransformed blit.
+   */
+  private static HashMap<Class<?>, BufferedImage[]> MICROBOT_IMAGES = new HashMap<>();
 
   private final Arena arena;
 
+  /**
+   * The microbot image for each {@link Arena#cellState(int, Direction) cell state}, so that drawing
+   * a cell needs no lookups beyond an array access. The entry for empty cells is null.
+   */
+  private final BufferedImage[] cellStateImages;
+
+  /** The static terrain of the arena, drawn once since it never changes. */
+  private final BufferedImage terrainImage;
+
+  /**
+   * The terrain with every microbot drawn on top of it. Rather than redrawing the whole arena each
+   * frame, only the cells that changed in the latest {@link ArenaFrames frame} published by the
+   * simulation are redrawn into this image, which is then copied to the screen in a single call.
+   */
+  private final BufferedImage frameImage;
+
   private ArenaView(Arena arena, int width, int height) {
     super(width, height, BACKGROUND_COLOR);
     this.arena = arena;
+    this.cellStateImages = createCellStateImages(arena);
+    this.terrainImage =
+        createImage(width, height, Transparency.OPAQUE, g2 -> drawTerrain(g2, arena));
+    this.frameImage =
+        createImage(
+            width, height, Transparency.OPAQUE, g2 -> g2.drawImage(terrainImage, null, 0, 0));
   }
 
   @Override
   public void paint(Graphics2D g2) {
-    drawTerrain(g2, arena.terrain());
-    drawMicrobots(g2, arena.microbots());
+    ArenaFrames.Frame frame = arena.frames().takeLatest();
+    if (frame != null) {
+      redrawChangedCells(frame);
+    }
+    g2.drawImage(frameImage, null, 0, 0);
+  }
+
+  /**
+   * Redraws each cell of {@link #frameImage} that changed in the given frame, by restoring the
+   * cell's terrain and then drawing the cell's occupant, if any. If the simulation has moved on
+   * since the frame was published, the frame still shows the arena as it was at that time.
+   */
+  private void redrawChangedCells(ArenaFrames.Frame frame) {
+    BitSet changedCells = frame.changedCells();
+    if (changedCells.isEmpty()) {
+      return;
+    }
+
+    Graphics2D g2 = frameImage.createGraphics();
+    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    for (int cell = changedCells.nextSetBit(0);
+        cell >= 0;
+        cell = changedCells.nextSetBit(cell + 1)) {
+      int row = cell / arena.columns();
+      int column = cell % arena.columns();
+      int x = ARENA_CELL_SIZE_PX * column;
+      int y = ARENA_CELL_SIZE_PX * row;
+      g2.drawImage(
+          terrainImage,
+          x,
+          y,
+          x + ARENA_CELL_SIZE_PX,
+          y + ARENA_CELL_SIZE_PX,
+          x,
+          y,
+          x + ARENA_CELL_SIZE_PX,
+          y + ARENA_CELL_SIZE_PX,
+          null);
+
+      BufferedImage microbotImage = cellStateImages[frame.cellState(cell)];
+      if (microbotImage != null) {
+        g2.drawImage(microbotImage, x, y, null);
+      }
+    }
+    g2.dispose();
   }
 
-  /** Draws all of the terrain in the arena. */
-  private static void drawTerrain(
-      Graphics2D g2, ImmutableTable<Integer, Integer, Terrain> terrain) {
-    terrain
-        .cellSet()
-        .forEach(
-            cell ->
-                drawArenaElement(
-                    g2,
-                    cell.getRowKey(),
-                    cell.getColumnKey(),
-                    () -> {
-                      if (TERRAIN_IMAGES.containsKey(cell.getValue())) {
-                        g2.drawImage(TERRAIN_IMAGES.get(cell.getValue()), null, 0, 0);
-                      }
-                    }));
+  /**
+   * Returns the microbot image for each cell state of the given arena, indexed by cell state. See
+   * {@link #cellStateImages}.
+   */
+  private static BufferedImage[] createCellStateImages(Arena arena) {
+    ImmutableMap<Class<? extends MicrobotProcessingUnit>, Color> mpuTypes = arena.mpuTypes();
+    Direction[] directions = Direction.values();
+    BufferedImage[] images = new BufferedImage[Arena.cellState(mpuTypes.size(), directions[0])];
+    int mpuTypeId = 0;
+    for (Map.Entry<Class<? extends MicrobotProcessingUnit>, Color> mpuType : mpuTypes.entrySet()) {
+      BufferedImage[] microbotImages = getMicrobotImages(mpuType.getKey(), mpuType.getValue());
+      for (Direction direction : directions) {
+        images[Arena.cellState(mpuTypeId, direction)] = microbotImages[direction.ordinal()];
+      }
+      mpuTypeId++;
+    }
+    return images;
   }
 
-  /** Draws all of the microbots in the arena. */
-  private static void drawMicrobots(Graphics2D g2, ImmutableSet<Microbot> microbots) {
-    microbots.forEach(
-        microbot -> {
-          maybeCreateMicrobotImage(microbot);
+  /** Draws all of the terrain in the arena on top of the background. */
+  private static void drawTerrain(Graphics2D g2, Arena arena) {
+    g2.setColor(BACKGROUND_COLOR);
+    g2.fillRect(0, 0, ARENA_CELL_SIZE_PX * arena.columns(), ARENA_CELL_SIZE_PX * arena.rows());
+
+    TerrainGrid terrain = arena.terrain();
+    for (int row = 0; row < terrain.rows(); row++) {
+      for (int column = 0; column < terrain.columns(); column++) {
+        Terrain cell = terrain.terrainAt(row, column);
+        if (TERRAIN_IMAGES.containsKey(cell)) {
           drawArenaElement(
-              g2,
-              microbot.row(),
-              microbot.column(),
-              () -> {
-                g2.rotate(
-                    microbot.facing().compassAngleRadians(),
-                    MICROBOT_PADDING_PX + MICROBOT_HALF_SIZE_DOUBLE_PX,
-                    MICROBOT_PADDING_PX + MICROBOT_HALF_SIZE_DOUBLE_PX);
-                g2.drawImage(MICROBOT_IMAGES.get(microbot.mpuType()), null, 0, 0);
-              });
-        });
+              g2, row, column, () -> g2.drawImage(TERRAIN_IMAGES.get(cell), null, 0, 0));
+        }
+      }
+    }
   }
 
   /**
@@ -102,23 +174,34 @@ final class ArenaView extends View {
   }
 
   /**
-   * Checks if {@link #MICROBOT_IMAGES} contains an entry for the microbot type with a given name,
-   * and creates one if not. Caching microbot images and drawing those images is more efficient than
-   * direct calls to methods like {@link Graphics2D#fill(Shape)}.
+   * Returns the entry of {@link #MICROBOT_IMAGES} for the given MPU type, creating it with the
+   * given color if there is none yet. Caching microbot images and drawing those images is more
+   * efficient than direct calls to methods like {@link Graphics2D#fill(Shape)}, and pre-rotating
+   * them avoids applying a transform for every microbot drawn.
    */
-  private static void maybeCreateMicrobotImage(Microbot microbot) {
-    if (!MICROBOT_IMAGES.containsKey(microbot.mpuType())) {
-      BufferedImage image =
-          createArenaElementImage(
-              g2 -> {
-                g2.translate(MICROBOT_PADDING_PX, MICROBOT_PADDING_PX);
-                g2.setColor(microbot.color());
-                g2.fillRect(0, 0, MICROBOT_SIZE_PX, MICROBOT_SIZE_PX);
-                g2.setColor(MICROBOT_DIRECTIONAL_VECTOR_COLOR);
-                g2.fill(MICROBOT_NORTH_FACING_VECTOR_SHAPE);
-              });
-      MICROBOT_IMAGES.put(microbot.mpuType(), image);
+  private static BufferedImage[] getMicrobotImages(
+      Class<? extends MicrobotProcessingUnit> mpuType, Color color) {
+    if (!MICROBOT_IMAGES.containsKey(mpuType)) {
+      Direction[] directions = Direction.values();
+      BufferedImage[] images = new BufferedImage[directions.length];
+      for (Direction direction : directions) {
+        images[direction.ordinal()] =
+            createArenaElementImage(
+                g2 -> {
+                  g2.rotate(
+                      direction.compassAngleRadians(),
+                      MICROBOT_PADDING_PX + MICROBOT_HALF_SIZE_DOUBLE_PX,
+                      MICROBOT_PADDING_PX + MICROBOT_HALF_SIZE_DOUBLE_PX);
+                  g2.translate(MICROBOT_PADDING_PX, MICROBOT_PADDING_PX);
+                  g2.setColor(color);
+                  g2.fillRect(0, 0, MICROBOT_SIZE_PX, MICROBOT_SIZE_PX);
+                  g2.setColor(MICROBOT_DIRECTIONAL_VECTOR_COLOR);
+                  g2.fill(MICROBOT_NORTH_FACING_VECTOR_SHAPE);
+                });
+      }
+      MICROBOT_IMAGES.put(mpuType, images);
     }
+    return MICROBOT_IMAGES.get(mpuType);
   }
 
   /**
@@ -149,8 +232,30 @@ final class ArenaView extends View {
    * image will be initialized to this size.
    */
   private static BufferedImage createArenaElementImage(Consumer<Graphics2D> imageDrawer) {
+    return createImage(
+        ARENA_CELL_SIZE_PX, ARENA_CELL_SIZE_PX, Transparency.TRANSLUCENT, imageDrawer);
+  }
+
+  /**
+   * Returns a new image of the given size and {@link Transparency transparency}, whose buffer is
+   * filled by invoking the given {@code imageDrawer}. When a display is available, the image is
+   * created in a format compatible with the screen, so that drawing it is a plain blit that can be
+   * hardware accelerated.
+   */
+  private static BufferedImage createImage(
+      int width, int height, int transparency, Consumer<Graphics2D> imageDrawer) {
     BufferedImage image =
-        new BufferedImage(ARENA_CELL_SIZE_PX, ARENA_CELL_SIZE_PX, BufferedImage.TYPE_INT_ARGB);
+        GraphicsEnvironment.isHeadless()
+            ? new BufferedImage(
+                width,
+                height,
+                transparency == Transparency.OPAQUE
+                    ? BufferedImage.TYPE_INT_RGB
+                    : BufferedImage.TYPE_INT_ARGB)
+            : GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice()
+                .getDefaultConfiguration()
+                .createCompatibleImage(width, height, transparency);
     Graphics2D g2 = image.createGraphics();
     g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     imageDrawer.accept(g2);
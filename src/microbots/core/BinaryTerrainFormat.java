@@ -0,0 +1,284 @@
+package microbots.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.io.ByteStreams;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes maps in a compact binary format, which can be memory-mapped and used as is, so
+ * that loading a map takes no heap, however large it is, and no more time than a single pass to
+ * validate it. All values are little-endian, and the file consists of:
+ *
+ * <ul>
+ *   <li>A {@value #HEADER_SIZE}-byte header, made up of the {@link #MAGIC} number, the format
+ *       {@link #VERSION}, and then the number of rows, the number of columns and the number of
+ *       traversable cells of the grid, each as a 32-bit integer, followed by four bytes of padding.
+ *   <li>The ordinal of each cell's {@link Terrain}, one byte per cell in order of their flat
+ *       indices, padded with zeros to a multiple of eight bytes.
+ *   <li>A bitmap of the traversable cells, as 64-bit words, in which cell {@code i} is bit {@code i
+ *       % 64} of word {@code i / 64}.
+ * </ul>
+ *
+ * <p>Running this class converts text maps to the binary format, writing each map given on the
+ * command line to a file with the same name and the extension {@code .map}.
+ */
+final class BinaryTerrainFormat {
+
+  /** The first four bytes of every binary map, {@code "MBTG"}. */
+  static final int MAGIC = 'M' | 'B' << 8 | 'T' << 16 | 'G' << 24;
+
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 24;
+
+  private static final Terrain[] TERRAIN_VALUES = Terrain.values();
+
+  /** The size of the buffer through which binary maps are written. */
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  // Not intended for instantiation.
+  private BinaryTerrainFormat() {}
+
+  /** Converts each text map named on the command line to the binary format. */
+  public static void main(String[] args) throws IOException {
+    for (String arg : args) {
+      Path source = Paths.get(arg);
+      String name = source.getFileName().toString();
+      int extension = name.lastIndexOf('.');
+      Path target =
+          source.resolveSibling((extension == -1 ? name : name.substring(0, extension)) + ".map");
+      write(TerrainGrid.load(source), target);
+      System.out.printf("Converted %s to %s.%n", source, target);
+    }
+  }
+
+  /** Returns whether the file at the given path begins with the {@link #MAGIC} number. */
+  static boolean isBinary(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path)) {
+      ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      while (magic.hasRemaining() && channel.read(magic) != -1) {}
+      return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+    }
+  }
+
+  /**
+   * Returns whether the given stream begins with the {@link #MAGIC} number, without consuming any
+   * of it. The stream must support {@link InputStream#mark(int) marking}.
+   */
+  static boolean isBinary(InputStream in) throws IOException {
+    byte[] magic = new byte[Integer.BYTES];
+    in.mark(magic.length);
+    int length = ByteStreams.read(in, magic, 0, magic.length);
+    in.reset();
+    return length == magic.length
+        && ByteBuffer.wrap(magic).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+  }
+
+  /**
+   * Reads a binary map from the given stream into memory, for maps that cannot be {@link
+   * #map(Path) memory-mapped}, such as resources inside a jar. The stream is read to the end of
+   * the map, but not closed.
+   *
+   * @throws IllegalArgumentException if the stream does not contain a well-formed binary map
+   */
+  static TerrainGrid read(InputStream in) throws IOException {
+    byte[] headerBytes = new byte[HEADER_SIZE];
+    checkArgument(
+        ByteStreams.read(in, headerBytes, 0, HEADER_SIZE) == HEADER_SIZE,
+        "Binary map is truncated.");
+    ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+    int cellCount = readHeader(header);
+    int rows = header.getInt(8);
+    int columns = header.getInt(12);
+    int traversableCount = header.getInt(16);
+
+    byte[] terrain = new byte[cellCount];
+    checkArgument(
+        ByteStreams.read(in, terrain, 0, cellCount) == cellCount, "Binary map is truncated.");
+    TerrainGrid grid = TerrainGrid.of(rows, columns, terrain);
+    checkArgument(
+        grid.traversableCount() == traversableCount,
+        "Binary map claims %s traversable cells, but has %s.",
+        traversableCount,
+        grid.traversableCount());
+
+    // The bitmap is recomputed from the terrain, so only skip past the rest of the map.
+    long bitmapSize = (long) TerrainGrid.bitmapLength(cellCount) * Long.BYTES;
+    long remaining = terrainLength(cellCount) - cellCount + bitmapSize;
+    try {
+      ByteStreams.skipFully(in, remaining);
+    } catch (EOFException e) {
+      throw new IllegalArgumentException("Binary map is truncated.", e);
+    }
+    return grid;
+  }
+
+  /**
+   * Checks the given header, positioned at its start, and returns the number of cells in the map.
+   */
+  private static int readHeader(ByteBuffer header) {
+    checkArgument(header.getInt() == MAGIC, "Not a binary map.");
+    int version = header.getInt();
+    checkArgument(version == VERSION, "Unsupported binary map version %s.", version);
+    int rows = header.getInt();
+    int columns = header.getInt();
+    int traversableCount = header.getInt();
+    checkArgument(rows > 0 && columns > 0, "Binary map is %sx%s.", rows, columns);
+    checkArgument((long) rows * columns <= Integer.MAX_VALUE, "Binary map has too many cells.");
+    int cellCount = rows * columns;
+    checkArgument(
+        traversableCount >= 0 && traversableCount <= cellCount,
+        "Binary map has %s traversable cells.",
+        traversableCount);
+    return cellCount;
+  }
+
+  /**
+   * Returns a grid backed by a memory mapping of the binary map at the given path. The file must
+   * not be modified for as long as the grid is in use.
+   *
+   * @throws IllegalArgumentException if the file is not a well-formed binary map
+   */
+  static TerrainGrid map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining() && channel.read(header) != -1) {}
+      checkArgument(!header.hasRemaining(), "Binary map is truncated.");
+      header.flip();
+
+      int cellCount = readHeader(header);
+      int rows = header.getInt(8);
+      int columns = header.getInt(12);
+      int traversableCount = header.getInt(16);
+      long bitmapOffset = HEADER_SIZE + terrainLength(cellCount);
+      long bitmapSize = (long) TerrainGrid.bitmapLength(cellCount) * Long.BYTES;
+      checkArgument(
+          channel.size() == bitmapOffset + bitmapSize,
+          "Binary map has %s bytes, expected %s.",
+          channel.size(),
+          bitmapOffset + bitmapSize);
+
+      ByteBuffer terrain = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, cellCount);
+      LongBuffer traversable =
+          channel
+              .map(FileChannel.MapMode.READ_ONLY, bitmapOffset, bitmapSize)
+              .order(ByteOrder.LITTLE_ENDIAN)
+              .asLongBuffer();
+      checkConsistent(terrain, traversable, traversableCount);
+      return TerrainGrid.of(rows, columns, terrain, traversable, traversableCount);
+    }
+  }
+
+  /**
+   * Checks that every byte of {@code terrain} is the ordinal of a {@link Terrain}, that {@code
+   * traversable} has a bit set for exactly the cells whose terrain is traversable, and that there
+   * are {@code traversableCount} of them, as the rest of the simulation trusts all three to agree.
+   */
+  private static void checkConsistent(
+      ByteBuffer terrain, LongBuffer traversable, int traversableCount) {
+    boolean[] isTraversable = new boolean[TERRAIN_VALUES.length];
+    for (Terrain value : TERRAIN_VALUES) {
+      isTraversable[value.ordinal()] = value.isTraversable();
+    }
+
+    int cellCount = terrain.capacity();
+    int count = 0;
+    for (int word = 0; word < traversable.capacity(); word++) {
+      long expected = 0;
+      for (int bit = 0, cell = word << 6; bit < Long.SIZE && cell < cellCount; bit++, cell++) {
+        int ordinal = terrain.get(cell) & 0xFF;
+        checkArgument(
+            ordinal < TERRAIN_VALUES.length,
+            "Binary map has unknown terrain %s in cell %s.",
+            ordinal,
+            cell);
+        if (isTraversable[ordinal]) {
+          expected |= 1L << bit;
+        }
+      }
+      checkArgument(
+          traversable.get(word) == expected,
+          "Binary map's traversability bitmap disagrees with its terrain at word %s.",
+          word);
+      count += Long.bitCount(expected);
+    }
+    checkArgument(
+        count == traversableCount,
+        "Binary map claims %s traversable cells, but has %s.",
+        traversableCount,
+        count);
+  }
+
+  /** Writes the given grid to the given path in the binary format. */
+  static void write(TerrainGrid grid, Path path) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      buffer
+          .putInt(MAGIC)
+          .putInt(VERSION)
+          .putInt(grid.rows())
+          .putInt(grid.columns())
+          .putInt(grid.traversableCount())
+          .putInt(0);
+
+      int cellCount = grid.cellCount();
+      for (int cell = 0; cell < cellCount; cell++) {
+        ensureRemaining(channel, buffer, Byte.BYTES).put((byte) grid.terrainAt(cell).ordinal());
+      }
+      for (long padding = cellCount; padding < terrainLength(cellCount); padding++) {
+        ensureRemaining(channel, buffer, Byte.BYTES).put((byte) 0);
+      }
+      for (int word = 0; word < TerrainGrid.bitmapLength(cellCount); word++) {
+        long bits = 0;
+        for (int bit = 0, cell = word << 6; bit < Long.SIZE && cell < cellCount; bit++, cell++) {
+          if (grid.isTraversable(cell)) {
+            bits |= 1L << bit;
+          }
+        }
+        ensureRemaining(channel, buffer, Long.BYTES).putLong(bits);
+      }
+      drain(channel, buffer);
+    }
+  }
+
+  /** Returns the size of the terrain section of a map with the given number of cells. */
+  private static long terrainLength(int cellCount) {
+    return (cellCount + 7L) & ~7L;
+  }
+
+  /**
+   * Returns the given buffer, after writing its contents to the channel if it doesn't have room
+   * for another {@code bytes} bytes.
+   */
+  private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes)
+      throws IOException {
+    if (buffer.remaining() < bytes) {
+      drain(channel, buffer);
+    }
+    return buffer;
+  }
+
+  /** Writes the contents of the given buffer to the channel, and then clears it. */
+  private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -1,5 +1,7 @@
 package microbots.core;
 
+import java.util.SplittableRandom;
+
 /**
  * Represents the four cardinal directions. These are used to track what direction a microbot is
  * facing and to compute cell adjacency in the arena.
@@ -12,9 +14,13 @@ enum Direction {
   SOUTH(1, 0, 180),
   WEST(0, -1, 270);
 
+  // Cached because values() returns a fresh copy of the array on every call.
+  private static final Direction[] VALUES = values();
+  private static final microbots.Direction[] SIMPLE_DIRECTIONS = microbots.Direction.values();
+
   static {
-    for (Direction direction : values()) {
-      if (direction.simpleDirection().ordinal() != direction.ordinal()) {
+    for (Direction direction : VALUES) {
+      if (!direction.simpleDirection().name().equals(direction.name())) {
         throw new RuntimeException(
             "enum microbots.Direction must have the same ordering as Direction.");
       }
@@ -62,26 +68,31 @@ enum Direction {
 
   /** Returns the direction that is 90 degrees clockwise relative to {@code this}. */
   Direction clockwise90() {
-    return values()[(ordinal() + 1) % 4];
+    return VALUES[(ordinal() + 1) % 4];
   }
 
   /** Returns the direction that is 180 degrees clockwise relative to {@code this}. */
   Direction clockwise180() {
-    return values()[(ordinal() + 2) % 4];
+    return VALUES[(ordinal() + 2) % 4];
   }
 
   /** Returns the direction that is 270 degrees clockwise relative to {@code this}. */
   Direction clockwise270() {
-    return values()[(ordinal() + 3) % 4];
+    return VALUES[(ordinal() + 3) % 4];
   }
 
   /** Returns the {@link microbots.Direction simple direction} equivalent of {@code this}. */
   microbots.Direction simpleDirection() {
-    return microbots.Direction.valueOf(name());
+    return SIMPLE_DIRECTIONS[ordinal()];
+  }
+
+  /** Returns the direction with the given ordinal. */
+  static Direction of(int ordinal) {
+    return VALUES[ordinal];
   }
 
-  /** Returns a random direction (selected uniformly). */
-  static Direction random() {
-    return values()[(int) (4 * Math.random())];
+  /** Returns a random direction (selected uniformly) drawn from the given source of randomness. */
+  static Direction random(SplittableRandom random) {
+    return VALUES[random.nextInt(VALUES.length)];
   }
 }
@@ -0,0 +1,43 @@
+package microbots.core;
+
+import java.util.BitSet;
+
+/**
+ * Tracks which cells of an arena have changed, so that views only need to redraw those cells. A
+ * cell is dirty when its occupant, or that occupant's facing or MPU type, has changed. Cells start
+ * out dirty, so that the first frame drawn includes every microbot.
+ *
+ * <p>Only the simulation thread accesses this class. Dirty cells reach the UI as part of the next
+ * {@link ArenaFrames.Frame frame} published.
+ */
+class DirtyCells {
+
+  /**
+   * Dirty cells that ignore every change, for arenas that are never drawn, such as those of
+   * headless simulations, so that they spend neither memory nor time on tracking changes.
+   */
+  static final DirtyCells NONE =
+      new DirtyCells(0) {
+        @Override
+        void mark(int cell) {}
+      };
+
+  private final BitSet cells;
+
+  DirtyCells(int cellCount) {
+    this.cells = new BitSet(cellCount);
+    this.cells.set(0, cellCount);
+  }
+
+  /** Marks the cell with the given flat index as dirty. */
+  void mark(int cell) {
+    cells.set(cell);
+  }
+
+  /** Replaces the contents of {@code target} with the dirty cells, and resets them to clean. */
+  void transferTo(BitSet target) {
+    target.clear();
+    target.or(cells);
+    cells.clear();
+  }
+}
@@ -1,23 +1,50 @@
 package microbots.core;
 
 import com.google.common.eventbus.EventBus;
-
-/** Utility class to coordinate events between the model and UI via an {@link EventBus}. */
+import com.google.common.eventbus.Subscribe;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Utility class to coordinate events between the model and UI via an {@link EventBus}.
+ *
+ * <p>Events that are posted once per round or once per repaint skip the event bus, whose
+ * reflective dispatch would otherwise dominate the cost of a fast round. Each of these events is a
+ * singleton, and is delivered by direct calls to the registered objects that implement its
+ * listener interface, e.g. {@link SimulationRoundDoneListener}, rather than to {@link Subscribe}
+ * methods.
+ */
 final class Events {
 
   private static final EventBus EVENT_BUS = new EventBus();
 
+  private static final Listeners<SimulationRoundDoneListener> ROUND_LISTENERS = new Listeners<>();
+  private static final Listeners<WindowRepaintDoneListener> REPAINT_LISTENERS = new Listeners<>();
+
   // Not intended for instantiation.
   private Events() {}
 
-  /** @see EventBus#register(Object) */
+  /**
+   * Registers the given object's {@link Subscribe} methods with the event bus, and the object
+   * itself as a listener for each listener interface it implements.
+   *
+   * @see EventBus#register(Object)
+   */
   static void register(Object object) {
     EVENT_BUS.register(object);
+    if (object instanceof SimulationRoundDoneListener) {
+      ROUND_LISTENERS.add((SimulationRoundDoneListener) object);
+    }
+    if (object instanceof WindowRepaintDoneListener) {
+      REPAINT_LISTENERS.add((WindowRepaintDoneListener) object);
+    }
   }
 
   /** @see EventBus#unregister(Object) */
   static void unregister(Object object) {
     EVENT_BUS.unregister(object);
+    ROUND_LISTENERS.remove(object);
+    REPAINT_LISTENERS.remove(object);
   }
 
   /** @see EventBus#post(Object) */
@@ -25,14 +52,84 @@ final class Events {
     EVENT_BUS.post(event);
   }
 
+  /** Delivers the given event to each registered {@link SimulationRoundDoneListener}. */
+  static void post(SimulationRoundDoneEvent event) {
+    ROUND_LISTENERS.dispatch(SimulationRoundDoneListener::onSimulationRoundDone, event);
+  }
+
+  /** Delivers the given event to each registered {@link WindowRepaintDoneListener}. */
+  static void post(WindowRepaintDoneEvent event) {
+    REPAINT_LISTENERS.dispatch(WindowRepaintDoneListener::onWindowRepaintDone, event);
+  }
+
+  /**
+   * A copy-on-write array of listeners of type {@code T}. Registration is rare, so copying on every
+   * change keeps dispatch down to a single volatile read and a loop, without locking or allocating.
+   */
+  private static final class Listeners<T> {
+
+    /** The current listeners, every one of which is a {@code T}. */
+    private volatile Object[] listeners = new Object[0];
+
+    synchronized void add(T listener) {
+      Object[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+      newListeners[listeners.length] = listener;
+      listeners = newListeners;
+    }
+
+    synchronized void remove(Object listener) {
+      for (int i = 0; i < listeners.length; i++) {
+        if (listeners[i] == listener) {
+          Object[] newListeners = new Object[listeners.length - 1];
+          System.arraycopy(listeners, 0, newListeners, 0, i);
+          System.arraycopy(listeners, i + 1, newListeners, i, newListeners.length - i);
+          listeners = newListeners;
+          return;
+        }
+      }
+    }
+
+    /**
+     * Delivers the given event to each current listener by calling {@code method} on it. Passing
+     * the event along, rather than capturing it, lets callers use a method reference that needs no
+     * allocation.
+     */
+    @SuppressWarnings("unchecked")
+    <E> void dispatch(BiConsumer<? super T, ? super E> method, E event) {
+      for (Object listener : listeners) {
+        method.accept((T) listener, event);
+      }
+    }
+  }
+
   /** Events are used to pass state or notifications between the model and the UI. */
   interface Event {}
 
   /** Event that is posted by the {@link Window} each time it finishes repainting itself. */
-  static final class WindowRepaintDoneEvent implements Event {}
+  static final class WindowRepaintDoneEvent implements Event {
+
+    static final WindowRepaintDoneEvent INSTANCE = new WindowRepaintDoneEvent();
+
+    private WindowRepaintDoneEvent() {}
+  }
+
+  /** Listener for {@link WindowRepaintDoneEvent}, which bypasses the event bus. */
+  interface WindowRepaintDoneListener {
+    void onWindowRepaintDone(WindowRepaintDoneEvent event);
+  }
 
   /** Event that is posted by the running {@link Simulation} each time it completes a round. */
-  static final class SimulationRoundDoneEvent implements Event {}
+  static final class SimulationRoundDoneEvent implements Event {
+
+    static final SimulationRoundDoneEvent INSTANCE = new SimulationRoundDoneEvent();
+
+    private SimulationRoundDoneEvent() {}
+  }
+
+  /** Listener for {@link SimulationRoundDoneEvent}, which bypasses the event bus. */
+  interface SimulationRoundDoneListener {
+    void onSimulationRoundDone(SimulationRoundDoneEvent event);
+  }
 
   /**
    * Event that is posted by a {@link Simulation} when {@link Simulation#run()} is called on that
@@ -0,0 +1,274 @@
+package microbots.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * Procedurally generates terrain. Every generator takes a size, a density between zero and one, and
+ * a seed, and always generates the same terrain from the same arguments. The higher the density,
+ * the more of the map is covered by walls, but what exactly density means differs from generator to
+ * generator, as documented on each.
+ *
+ * <p>Generated terrain is cached, so that battles fought on the same generated map, e.g. each
+ * matchup of a {@link Tournament}, share one grid rather than each generating their own. The cache
+ * holds grids that {@link TerrainGrid#retainedBytes() retain} up to {@link #MAX_CACHED_BYTES} bytes
+ * in total, evicting the least recently used grids beyond that.
+ */
+public enum MapGenerator {
+
+  /**
+   * Scatters walls uniformly at random, each cell being a wall with a probability of density, so
+   * that density is the expected fraction of the map covered by walls.
+   */
+  RANDOM_WALLS {
+    @Override
+    void generate(byte[] walls, int rows, int columns, double density, SplittableRandom random) {
+      for (int cell = 0; cell < walls.length; cell++) {
+        walls[cell] = random.nextDouble() < density ? WALL : FIELD;
+      }
+    }
+  },
+
+  /**
+   * Carves a maze, with corridors one cell wide, using a randomized depth-first search. A density
+   * of one gives a perfect maze, in which there is exactly one path between any two points, and
+   * lower densities knock out a proportion of the remaining walls between corridors, opening up
+   * loops. Density is the fraction of those walls that is kept; the walls at the corners of the
+   * lattice always stay, so walls cover about a quarter of the map at a density of zero, and about
+   * half of it at a density of one.
+   */
+  MAZE {
+    @Override
+    void generate(byte[] walls, int rows, int columns, double density, SplittableRandom random) {
+      // The maze is laid out on a lattice of nodes at even rows and columns, connected by
+      // passages through the cells between them.
+      int nodeRows = (rows + 1) / 2;
+      int nodeColumns = (columns + 1) / 2;
+      Arrays.fill(walls, WALL);
+
+      boolean[] visited = new boolean[nodeRows * nodeColumns];
+      int[] stack = new int[visited.length];
+      int[] unvisited = new int[DIRECTIONS.length];
+      int depth = 0;
+      stack[depth++] = 0;
+      visited[0] = true;
+      walls[0] = FIELD;
+      while (depth > 0) {
+        int node = stack[depth - 1];
+        int nodeRow = node / nodeColumns;
+        int nodeColumn = node % nodeColumns;
+
+        int unvisitedCount = 0;
+        for (Direction direction : DIRECTIONS) {
+          int row = nodeRow + direction.rowOffset();
+          int column = nodeColumn + direction.columnOffset();
+          if (row >= 0
+              && row < nodeRows
+              && column >= 0
+              && column < nodeColumns
+              && !visited[row * nodeColumns + column]) {
+            unvisited[unvisitedCount++] = direction.ordinal();
+          }
+        }
+        if (unvisitedCount == 0) {
+          depth--;
+          continue;
+        }
+
+        Direction direction = DIRECTIONS[unvisited[random.nextInt(unvisitedCount)]];
+        int row = nodeRow + direction.rowOffset();
+        int column = nodeColumn + direction.columnOffset();
+        int next = row * nodeColumns + column;
+        visited[next] = true;
+        walls[(2 * nodeRow + direction.rowOffset()) * columns
+                + 2 * nodeColumn
+                + direction.columnOffset()] =
+            FIELD;
+        walls[2 * row * columns + 2 * column] = FIELD;
+        stack[depth++] = next;
+      }
+
+      // Knock out walls between horizontally or vertically adjacent nodes.
+      for (int row = 0; row < rows; row++) {
+        for (int column = (row + 1) % 2; column < columns; column += 2) {
+          boolean betweenNodes = row % 2 == 0 ? column + 1 < columns : row + 1 < rows;
+          int cell = row * columns + column;
+          if (betweenNodes && walls[cell] == WALL && random.nextDouble() >= density) {
+            walls[cell] = FIELD;
+          }
+        }
+      }
+    }
+  },
+
+  /**
+   * Grows caves with a cellular automaton. Cells start out as walls with a probability of density,
+   * and are then repeatedly smoothed, each becoming a wall if most of the cells around it are.
+   *
+   * <p>Density is only the initial fraction of walls: smoothing amplifies any departure from one
+   * half, so the final fraction is far more extreme than the density. A density of 0.5 leaves about
+   * half of the map covered by walls, but 0.4 leaves about 15% and 0.3 next to none, while 0.6
+   * leaves about 85% and 0.7 next to all of it. Densities between 0.4 and 0.6 give the most
+   * cave-like maps.
+   */
+  CAVES {
+    /** The number of smoothing steps, which must be even so that the result ends up in walls. */
+    private static final int SMOOTHING_STEPS = 4;
+
+    @Override
+    void generate(byte[] walls, int rows, int columns, double density, SplittableRandom random) {
+      RANDOM_WALLS.generate(walls, rows, columns, density, random);
+      byte[] smoothed = new byte[walls.length];
+      int[] columnSums = new int[columns];
+      for (int step = 0; step < SMOOTHING_STEPS; step++) {
+        byte[] source = step % 2 == 0 ? walls : smoothed;
+        byte[] target = step % 2 == 0 ? smoothed : walls;
+        smooth(source, target, rows, columns, columnSums);
+      }
+    }
+
+    /**
+     * Writes the next step of the automaton to {@code target}. A cell becomes a wall if at least
+     * five of the nine cells in the 3x3 block centered on it are walls, wrapping around the edges
+     * of the map. The block sums are computed from running sums of each column, so that each cell
+     * costs a handful of additions.
+     */
+    private void smooth(byte[] source, byte[] target, int rows, int columns, int[] columnSums) {
+      for (int row = 0; row < rows; row++) {
+        int above = (row == 0 ? rows - 1 : row - 1) * columns;
+        int here = row * columns;
+        int below = (row == rows - 1 ? 0 : row + 1) * columns;
+        for (int column = 0; column < columns; column++) {
+          columnSums[column] =
+              source[above + column] + source[here + column] + source[below + column];
+        }
+        for (int column = 0; column < columns; column++) {
+          int left = columnSums[column == 0 ? columns - 1 : column - 1];
+          int right = columnSums[column == columns - 1 ? 0 : column + 1];
+          target[here + column] = left + columnSums[column] + right >= 5 ? WALL : FIELD;
+        }
+      }
+    }
+  },
+
+  /**
+   * Raises round islands out of a sea of walls, until walls cover no more than a proportion of the
+   * map given by density, which the result comes within one island of. Islands that overlap merge
+   * into larger land masses.
+   */
+  ISLANDS {
+    private static final int MIN_RADIUS = 2;
+
+    @Override
+    void generate(byte[] walls, int rows, int columns, double density, SplittableRandom random) {
+      Arrays.fill(walls, WALL);
+      int maxRadius = Math.max(MIN_RADIUS, Math.min(rows, columns) / 8);
+      long fieldsWanted = (long) Math.ceil((1 - density) * walls.length);
+      long fields = 0;
+      while (fields < fieldsWanted) {
+        int centerRow = random.nextInt(rows);
+        int centerColumn = random.nextInt(columns);
+        int radius = MIN_RADIUS + random.nextInt(maxRadius - MIN_RADIUS + 1);
+        for (int rowOffset = -radius; rowOffset <= radius; rowOffset++) {
+          int halfWidth = (int) Math.sqrt(radius * radius - rowOffset * rowOffset);
+          int here = Math.floorMod(centerRow + rowOffset, rows) * columns;
+          for (int columnOffset = -halfWidth; columnOffset <= halfWidth; columnOffset++) {
+            int cell = here + Math.floorMod(centerColumn + columnOffset, columns);
+            if (walls[cell] == WALL) {
+              walls[cell] = FIELD;
+              fields++;
+            }
+          }
+        }
+      }
+    }
+  };
+
+  /** The most bytes of terrain, 256 MiB, that are kept in the cache of generated maps. */
+  static final long MAX_CACHED_BYTES = 1L << 28;
+
+  private static final byte FIELD = 0;
+  private static final byte WALL = 1;
+
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  private static final LoadingCache<Key, TerrainGrid> CACHE =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_BYTES)
+          .weigher(
+              (Key key, TerrainGrid terrain) ->
+                  (int) Math.min(terrain.retainedBytes(), Integer.MAX_VALUE))
+          .build(CacheLoader.from(Key::generate));
+
+  /**
+   * Returns terrain of the given size generated from the given density and seed, either by
+   * generating it or from the cache. Density must be between zero and one, inclusive.
+   */
+  public TerrainGrid generate(int rows, int columns, double density, long seed) {
+    checkArgument(rows > 0, "rows must be positive.");
+    checkArgument(columns > 0, "columns must be positive.");
+    checkArgument((long) rows * columns <= Integer.MAX_VALUE, "Map has too many cells.");
+    checkArgument(density >= 0 && density <= 1, "density must be between zero and one.");
+    return CACHE.getUnchecked(new Key(this, rows, columns, density, seed));
+  }
+
+  /**
+   * Fills {@code walls}, which is indexed by flat cell index, with {@link #WALL} or {@link #FIELD}
+   * for each cell of a map of the given size, drawing from the given source of randomness.
+   */
+  abstract void generate(
+      byte[] walls, int rows, int columns, double density, SplittableRandom random);
+
+  /** The arguments that a generated map is cached by. */
+  private static final class Key {
+
+    private final MapGenerator generator;
+    private final int rows;
+    private final int columns;
+    private final double density;
+    private final long seed;
+
+    private Key(MapGenerator generator, int rows, int columns, double density, long seed) {
+      this.generator = generator;
+      this.rows = rows;
+      this.columns = columns;
+      this.density = density;
+      this.seed = seed;
+    }
+
+    /** Generates the terrain for this key. */
+    private TerrainGrid generate() {
+      byte[] terrain = new byte[rows * columns];
+      generator.generate(terrain, rows, columns, density, new SplittableRandom(seed));
+      for (int cell = 0; cell < terrain.length; cell++) {
+        terrain[cell] =
+            (byte) (terrain[cell] == WALL ? Terrain.WALL.ordinal() : Terrain.FIELD.ordinal());
+      }
+      return TerrainGrid.of(rows, columns, terrain);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) other;
+      return generator == that.generator
+          && rows == that.rows
+          && columns == that.columns
+          && Double.compare(density, that.density) == 0
+          && seed == that.seed;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(generator, rows, columns, density, seed);
+    }
+  }
+}
@@ -1,103 +1,65 @@
 package microbots.core;
 
-import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.awt.Color;
-import java.util.HashMap;
 import microbots.Action;
 import microbots.MicrobotProcessingUnit;
 import microbots.Obstacle;
 import microbots.State;
 
-/** Wraps a {@link MicrobotProcessingUnit} along with additional data for the simulation. */
+/**
+ * A view of a single microbot in a {@link MicrobotStore}, which holds its {@link
+ * MicrobotProcessingUnit} along with additional data for the simulation. The simulation itself
+ * works with microbot IDs directly; views are for code where an object is more convenient.
+ *
+ * <p>Views are read-only. Microbots only change through their {@link Arena}, which keeps its
+ * {@link PopulationCounts} and the cells it has yet to draw in step with every change.
+ */
 final class Microbot {
 
-  private static final HashMap<Class<? extends MicrobotProcessingUnit>, Color> MPU_COLOR_CACHE =
-      new HashMap<>();
+  private final MicrobotStore store;
+  private final int id;
 
-  private MicrobotProcessingUnit mpu;
-  private Direction facing;
-  private int row;
-  private int column;
-
-  Microbot(MicrobotProcessingUnit mpu, Direction facing) {
-    this.mpu = checkNotNull(mpu);
-    this.facing = checkNotNull(facing);
+  Microbot(MicrobotStore store, int id) {
+    this.store = checkNotNull(store);
+    this.id = id;
+  }
 
-    // These will be initialized when the microbot is placed in an arena.
-    this.row = -1;
-    this.column = -1;
+  /** Returns the ID of this microbot in its {@link MicrobotStore}. */
+  int id() {
+    return id;
   }
 
   /** @see MicrobotProcessingUnit#name() */
   String name() {
-    return firstNonNull(mpu.name(), mpu.getClass().getSimpleName());
+    return store.name(id);
   }
 
   /** @see MicrobotProcessingUnit#color() */
   Color color() {
-    if (!MPU_COLOR_CACHE.containsKey(mpu.getClass())) {
-      MPU_COLOR_CACHE.put(mpu.getClass(), firstNonNull(mpu.color(), Color.WHITE));
-    }
-    return MPU_COLOR_CACHE.get(mpu.getClass());
+    return store.mpuColor(store.mpuTypeId(id));
   }
 
   /** @see MicrobotProcessingUnit#getAction(State) */
   Action getAction(State state) {
-    checkNotNull(state);
-    return firstNonNull(mpu.getAction(state), Action.WAIT);
+    return store.getAction(id, state);
   }
 
   /** Returns the type of this microbot's MPU. */
   Class<? extends MicrobotProcessingUnit> mpuType() {
-    return mpu.getClass();
+    return store.mpuType(id);
   }
 
-  /** Returns the row this microbot is located at in the arena. */
-  int row() {
-    return row;
-  }
-
-  /** Returns the column this microbot is located at in the arena. */
-  int column() {
-    return column;
-  }
-
-  /** Updates this microbot's {@link #row} and {@link #column}. */
-  void setPosition(int row, int column) {
-    this.row = row;
-    this.column = column;
+  /** Returns the flat index of the cell this microbot is located at in the arena. */
+  int cell() {
+    return store.cell(id);
   }
 
   /** Returns the {@link Direction} this microbot is currently facing. */
   Direction facing() {
-    return facing;
-  }
-
-  /** Rotates this microbot 90 degrees counterclockwise. */
-  void rotateLeft() {
-    facing = facing.clockwise270();
-  }
-
-  /** Rotates this microbot 90 degrees clockwise. */
-  void rotateRight() {
-    facing = facing.clockwise90();
-  }
-
-  /**
-   * Attempts to hack the specified microbot, converting their {@link #mpu} into one with the same
-   * type as this microbot's. If {@code other} already has the same MPU type, then nothing happens.
-   */
-  void hack(Microbot other) {
-    checkNotNull(other);
-    if (classify(other) == Obstacle.ENEMY) {
-      try {
-        other.mpu = this.mpuType().newInstance();
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
-    }
+    return store.facing(id);
   }
 
   /**
@@ -105,7 +67,13 @@ final class Microbot {
    * microbot. In other words, returns whether the microbots are of the same type or not.
    */
   Obstacle classify(Microbot other) {
+    return store.classify(id, sameStore(other).id);
+  }
+
+  /** Checks that the given microbot is in the same store as this one, and returns it. */
+  private Microbot sameStore(Microbot other) {
     checkNotNull(other);
-    return other.mpuType().equals(this.mpuType()) ? Obstacle.FRIEND : Obstacle.ENEMY;
+    checkArgument(other.store == store, "Microbots must be in the same store.");
+    return other;
   }
 }
@@ -3,10 +3,21 @@ package microbots.core;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
 import microbots.MicrobotProcessingUnit;
+import microbots.Stateless;
 
 /**
  * Factory for creating microbots. Example usage:
@@ -15,61 +26,185 @@ import microbots.MicrobotProcessingUnit;
  *   static final class Microbot9000 extends MicrobotProcesingUnit { ... }
  *   static final class MicrobotPrime extends MicrobotProcesingUnit { ... }
  *   ...
- *   ImmutableList&lt;Microbot&gt; microbots =
- *       MicrobotFactory.create(100)
- *           .ofEach(Microbot9000.class, MicrobotPrime.class);
+ *   MicrobotStore microbots =
+ *       MicrobotFactory.create(100, new SplittableRandom(seed))
+ *           .ofEach(ImmutableList.of(Microbot9000.class, MicrobotPrime.class));
  * </pre>
  */
 final class MicrobotFactory {
 
+  private static final Comparator<Class<?>> BY_CLASS_NAME = Comparator.comparing(Class::getName);
+
+  /**
+   * The no-arg constructor of each MPU type, compiled into a {@link Supplier} the first time the
+   * type is instantiated. Hacks create an MPU every time they convert a microbot, and going through
+   * a compiled constructor avoids the reflective access checks of {@link Class#newInstance()}. For
+   * {@link Stateless} types, the supplier instead returns a single shared instance.
+   */
+  private static final ClassValue<Supplier<MicrobotProcessingUnit>> MPU_CONSTRUCTORS =
+      new ClassValue<Supplier<MicrobotProcessingUnit>>() {
+        @Override
+        protected Supplier<MicrobotProcessingUnit> computeValue(Class<?> mpuType) {
+          Supplier<MicrobotProcessingUnit> constructor =
+              compileConstructor(mpuType.asSubclass(MicrobotProcessingUnit.class));
+          if (mpuType.isAnnotationPresent(Stateless.class)) {
+            MicrobotProcessingUnit sharedInstance = constructor.get();
+            return () -> sharedInstance;
+          }
+          return constructor;
+        }
+      };
+
   private final int quantity;
+  private final SplittableRandom random;
 
-  private MicrobotFactory(int quantity) {
+  private MicrobotFactory(int quantity, SplittableRandom random) {
     this.quantity = quantity;
+    this.random = random;
   }
 
   /**
-   * For each provided {@link MicrobotProcessingUnit mpuType} creates {@link #quantity} microbots.
-   * The returned list is shuffled.
+   * For each provided {@link MicrobotProcessingUnit mpuType} creates {@link #quantity} microbots,
+   * and returns a store of them all. The microbots are shuffled, i.e. assigned random IDs. MPU types
+   * are processed in order of class name, so that the result depends only on {@link #random} and
+   * not on the iteration order of {@code mpuTypes}.
    */
-  ImmutableList<Microbot> ofEach(Iterable<Class<? extends MicrobotProcessingUnit>> mpuTypes) {
+  MicrobotStore ofEach(Iterable<Class<? extends MicrobotProcessingUnit>> mpuTypes) {
     checkNotNull(mpuTypes);
-    ArrayList<Microbot> microbots = new ArrayList<>();
-    for (Class<? extends MicrobotProcessingUnit> mpuType : mpuTypes) {
-      microbots.addAll(of(mpuType));
+    ArrayList<MicrobotProcessingUnit> mpus = new ArrayList<>();
+    ArrayList<Direction> facings = new ArrayList<>();
+    for (Class<? extends MicrobotProcessingUnit> mpuType :
+        ImmutableList.sortedCopyOf(BY_CLASS_NAME, mpuTypes)) {
+      addEach(mpuType, mpus, facings);
     }
-    Collections.shuffle(microbots);
-    return ImmutableList.copyOf(microbots);
+
+    MicrobotStore.Builder store = MicrobotStore.builder();
+    for (int i : shuffledIndices(mpus.size())) {
+      store.add(mpus.get(i), facings.get(i));
+    }
+    return store.build();
   }
 
   /**
-   * Creates {@link #quantity} microbots each with the given {@link MicrobotProcessingUnit mpuType}.
+   * Returns the integers from 0 to {@code size - 1}, shuffled (Fisher-Yates) using {@link
+   * #random}.
    */
-  private <MpuT extends MicrobotProcessingUnit> ArrayList<Microbot> of(Class<MpuT> mpuType) {
+  private int[] shuffledIndices(int size) {
+    int[] indices = new int[size];
+    for (int i = 0; i < size; i++) {
+      indices[i] = i;
+    }
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int index = indices[i];
+      indices[i] = indices[j];
+      indices[j] = index;
+    }
+    return indices;
+  }
+
+  /**
+   * Creates {@link #quantity} microbots each with the given {@link MicrobotProcessingUnit mpuType},
+   * adding the MPU and initial facing of each to the given lists.
+   */
+  private void addEach(
+      Class<? extends MicrobotProcessingUnit> mpuType,
+      List<MicrobotProcessingUnit> mpus,
+      List<Direction> facings) {
     checkNotNull(mpuType);
-    ArrayList<Microbot> microbots = new ArrayList<>(quantity);
+    int initialSize = mpus.size();
     for (int i = 0; i < quantity; i++) {
       try {
-        MpuT mpu = mpuType.newInstance();
-        Direction facing = Direction.random();
-        microbots.add(new Microbot(mpu, facing));
+        mpus.add(newMpu(mpuType));
+        facings.add(Direction.random(random));
       } catch (Exception e) {
         System.err.printf(
             "Encountered error constructing microbot %s; skipping this type.\n",
             mpuType.getSimpleName());
         e.printStackTrace();
-        return new ArrayList<>();
+        mpus.subList(initialSize, mpus.size()).clear();
+        facings.subList(initialSize, facings.size()).clear();
+        return;
       }
     }
-    return microbots;
+  }
+
+  /**
+   * Returns an instance of the given {@link MicrobotProcessingUnit mpuType} for a new microbot.
+   * This is a new instance created with the type's no-arg constructor, unless the type is {@link
+   * Stateless}, in which case every call returns the same instance. Throws {@link
+   * IllegalArgumentException} if the type is abstract or has no such constructor, and rethrows
+   * anything that the constructor throws.
+   */
+  static MicrobotProcessingUnit newMpu(Class<? extends MicrobotProcessingUnit> mpuType) {
+    return MPU_CONSTRUCTORS.get(mpuType).get();
+  }
+
+  /**
+   * Returns a supplier that invokes the no-arg constructor of the given MPU type. Where the
+   * constructor is public, the supplier is spun by {@link LambdaMetafactory}, so that invoking it
+   * is as fast as a plain {@code new}. Otherwise, e.g. for a private nested class, it falls back to
+   * invoking a {@link MethodHandle} of the constructor.
+   */
+  private static Supplier<MicrobotProcessingUnit> compileConstructor(
+      Class<? extends MicrobotProcessingUnit> mpuType) {
+    checkArgument(
+        !Modifier.isAbstract(mpuType.getModifiers()),
+        "%s is abstract and cannot be instantiated.",
+        mpuType.getName());
+    MethodType constructorType = MethodType.methodType(void.class);
+    try {
+      MethodHandle constructor =
+          MethodHandles.publicLookup().findConstructor(mpuType, constructorType);
+      @SuppressWarnings("unchecked")
+      Supplier<MicrobotProcessingUnit> supplier =
+          (Supplier<MicrobotProcessingUnit>)
+              LambdaMetafactory.metafactory(
+                      MethodHandles.lookup(),
+                      "get",
+                      MethodType.methodType(Supplier.class),
+                      MethodType.methodType(Object.class),
+                      constructor,
+                      MethodType.methodType(mpuType))
+                  .getTarget()
+                  .invokeExact();
+      return supplier;
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      // The constructor is not public, or does not exist; the fallback reports the latter.
+    } catch (Throwable t) {
+      throw new IllegalStateException("Failed to compile constructor of " + mpuType.getName(), t);
+    }
+
+    MethodHandle constructor;
+    try {
+      Constructor<? extends MicrobotProcessingUnit> reflected = mpuType.getDeclaredConstructor();
+      reflected.setAccessible(true);
+      constructor =
+          MethodHandles.lookup()
+              .unreflectConstructor(reflected)
+              .asType(MethodType.methodType(MicrobotProcessingUnit.class));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      throw new IllegalArgumentException(
+          mpuType.getName() + " must have an accessible no-arg constructor.", e);
+    }
+    return () -> {
+      try {
+        return (MicrobotProcessingUnit) constructor.invokeExact();
+      } catch (Throwable t) {
+        Throwables.throwIfUnchecked(t);
+        throw new RuntimeException(t);
+      }
+    };
   }
 
   /**
    * Returns a new {@link MicrobotFactory} which can be used to create a specified quantity of
-   * microbots.
+   * microbots. All random choices, such as facing directions and ordering, are drawn from {@code
+   * random}.
    */
-  static MicrobotFactory create(int quantity) {
+  static MicrobotFactory create(int quantity, SplittableRandom random) {
     checkArgument(quantity >= 0, "quantity must be non-negative.");
-    return new MicrobotFactory(quantity);
+    checkNotNull(random);
+    return new MicrobotFactory(quantity, random);
   }
 }
@@ -0,0 +1,199 @@
+package microbots.core;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import microbots.Action;
+import microbots.MicrobotProcessingUnit;
+import microbots.Obstacle;
+import microbots.State;
+
+/**
+ * Holds the state of every microbot in a simulation. Microbots are identified by a dense integer
+ * ID, and each part of their state is kept in its own array indexed by that ID, so that a round,
+ * which visits every microbot in ID order, reads memory sequentially rather than chasing a pointer
+ * per microbot. {@link Microbot} objects are views over a single entry.
+ *
+ * <p>The methods that change a microbot are only meant for its {@link Arena}, which mirrors those
+ * changes in its population counts and dirty cells; everything else changes microbots through the
+ * arena.
+ *
+ * <p>The MPU types present are also identified by dense IDs, in order of first appearance. Since
+ * hacks only ever convert microbots to a type that is already present, the set of types is fixed
+ * when the store is built.
+ */
+final class MicrobotStore {
+
+  private final ImmutableList<Class<? extends MicrobotProcessingUnit>> mpuTypes;
+  private final ImmutableList<Color> mpuColors;
+
+  private final MicrobotProcessingUnit[] mpus;
+  private final int[] mpuTypeIds;
+  private final byte[] facings;
+  private final int[] cells;
+
+  private final ImmutableList<Microbot> microbots;
+
+  private MicrobotStore(
+      ImmutableList<Class<? extends MicrobotProcessingUnit>> mpuTypes,
+      ImmutableList<Color> mpuColors,
+      MicrobotProcessingUnit[] mpus,
+      int[] mpuTypeIds,
+      byte[] facings) {
+    this.mpuTypes = mpuTypes;
+    this.mpuColors = mpuColors;
+    this.mpus = mpus;
+    this.mpuTypeIds = mpuTypeIds;
+    this.facings = facings;
+
+    // These will be initialized when the microbots are placed in an arena.
+    this.cells = new int[mpus.length];
+    Arrays.fill(cells, -1);
+
+    ImmutableList.Builder<Microbot> microbots = ImmutableList.builderWithExpectedSize(mpus.length);
+    for (int id = 0; id < mpus.length; id++) {
+      microbots.add(new Microbot(this, id));
+    }
+    this.microbots = microbots.build();
+  }
+
+  /** Returns the number of microbots in this store. */
+  int size() {
+    return mpus.length;
+  }
+
+  /** Returns a view of each microbot in this store, indexed by ID. */
+  ImmutableList<Microbot> microbots() {
+    return microbots;
+  }
+
+  /** Returns the MPU types present in this store, indexed by MPU type ID. */
+  ImmutableList<Class<? extends MicrobotProcessingUnit>> mpuTypes() {
+    return mpuTypes;
+  }
+
+  /** Returns the color of the MPU type with the given ID. */
+  Color mpuColor(int mpuTypeId) {
+    return mpuColors.get(mpuTypeId);
+  }
+
+  /** Returns the ID of the MPU type of the given microbot. */
+  int mpuTypeId(int microbot) {
+    return mpuTypeIds[microbot];
+  }
+
+  /** Returns the MPU type of the given microbot. */
+  Class<? extends MicrobotProcessingUnit> mpuType(int microbot) {
+    return mpuTypes.get(mpuTypeIds[microbot]);
+  }
+
+  /** @see MicrobotProcessingUnit#name() */
+  String name(int microbot) {
+    MicrobotProcessingUnit mpu = mpus[microbot];
+    return firstNonNull(mpu.name(), mpu.getClass().getSimpleName());
+  }
+
+  /** @see MicrobotProcessingUnit#getAction(State) */
+  Action getAction(int microbot, State state) {
+    checkNotNull(state);
+    return firstNonNull(mpus[microbot].getAction(state), Action.WAIT);
+  }
+
+  /** Returns the flat index of the cell the given microbot is located at in the arena. */
+  int cell(int microbot) {
+    return cells[microbot];
+  }
+
+  /** Updates the cell the given microbot is located at. */
+  void setCell(int microbot, int cell) {
+    cells[microbot] = cell;
+  }
+
+  /** Returns the {@link Direction} the given microbot is currently facing. */
+  Direction facing(int microbot) {
+    return Direction.of(facings[microbot]);
+  }
+
+  /** Rotates the given microbot 90 degrees counterclockwise. */
+  void rotateLeft(int microbot) {
+    facings[microbot] = (byte) facing(microbot).clockwise270().ordinal();
+  }
+
+  /** Rotates the given microbot 90 degrees clockwise. */
+  void rotateRight(int microbot) {
+    facings[microbot] = (byte) facing(microbot).clockwise90().ordinal();
+  }
+
+  /**
+   * Has the {@code hacker} microbot attempt to hack the {@code target}, converting the target's MPU
+   * into one with the same type as the hacker's. If they already have the same MPU type, then
+   * nothing happens. Returns whether the target was converted.
+   */
+  boolean hack(int hacker, int target) {
+    if (classify(hacker, target) != Obstacle.ENEMY) {
+      return false;
+    }
+    mpus[target] = MicrobotFactory.newMpu(mpuType(hacker));
+    mpuTypeIds[target] = mpuTypeIds[hacker];
+    return true;
+  }
+
+  /**
+   * Returns the {@link Obstacle obstacle classification} of the {@code other} microbot relative to
+   * the given one. In other words, returns whether the microbots are of the same type or not.
+   */
+  Obstacle classify(int microbot, int other) {
+    return mpuTypeIds[microbot] == mpuTypeIds[other] ? Obstacle.FRIEND : Obstacle.ENEMY;
+  }
+
+  /** Returns a new {@link Builder} for constructing microbot stores. */
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder class for creating microbot stores. Microbots are assigned IDs in order of addition. */
+  static final class Builder {
+
+    private final ArrayList<MicrobotProcessingUnit> mpus = new ArrayList<>();
+    private final ArrayList<Direction> facings = new ArrayList<>();
+
+    /** Adds a microbot with the given MPU, initially facing in the given direction. */
+    Builder add(MicrobotProcessingUnit mpu, Direction facing) {
+      mpus.add(checkNotNull(mpu));
+      facings.add(checkNotNull(facing));
+      return this;
+    }
+
+    /** Returns a new microbot store. */
+    MicrobotStore build() {
+      LinkedHashMap<Class<? extends MicrobotProcessingUnit>, Integer> mpuTypeIdsByType =
+          new LinkedHashMap<>();
+      ImmutableList.Builder<Color> mpuColors = ImmutableList.builder();
+      int[] mpuTypeIds = new int[mpus.size()];
+      byte[] facingOrdinals = new byte[mpus.size()];
+      for (int id = 0; id < mpus.size(); id++) {
+        MicrobotProcessingUnit mpu = mpus.get(id);
+        Integer mpuTypeId = mpuTypeIdsByType.get(mpu.getClass());
+        if (mpuTypeId == null) {
+          mpuTypeId = mpuTypeIdsByType.size();
+          mpuTypeIdsByType.put(mpu.getClass(), mpuTypeId);
+          mpuColors.add(firstNonNull(mpu.color(), Color.WHITE));
+        }
+        mpuTypeIds[id] = mpuTypeId;
+        facingOrdinals[id] = (byte) facings.get(id).ordinal();
+      }
+
+      return new MicrobotStore(
+          ImmutableList.copyOf(mpuTypeIdsByType.keySet()),
+          mpuColors.build(),
+          mpus.toArray(new MicrobotProcessingUnit[0]),
+          mpuTypeIds,
+          facingOrdinals);
+    }
+  }
+}
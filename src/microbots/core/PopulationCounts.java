@@ -0,0 +1,121 @@
+package microbots.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableMap;
+import java.awt.Color;
+import java.util.LinkedHashMap;
+
+/**
+ * Tracks how many microbots of each type are in an arena. Rather than rescanning every microbot,
+ * the counts are updated in constant time whenever a hack converts a microbot from one type to
+ * another. Populations are identified by {@link Microbot#name() name}, the same as in {@link
+ * PopulationSnapshot}.
+ *
+ * <p>The live counts are only accessed by the simulation thread. Other threads read the counts as
+ * of the most recent call to {@link #publish()}, which are captured all at once, so that they never
+ * observe one half of a conversion without the other.
+ */
+final class PopulationCounts {
+
+  private final ImmutableMap<String, Counter> counters;
+
+  /** The size of each counter as of the last {@link #publish()}, indexed by counter order. */
+  private volatile int[] publishedSizes;
+
+  private PopulationCounts(ImmutableMap<String, Counter> counters) {
+    this.counters = counters;
+    publish();
+  }
+
+  /**
+   * Returns the counter of every microbot type that was present when counting began, including
+   * types that have since been eliminated.
+   */
+  ImmutableCollection<Counter> counters() {
+    return counters.values();
+  }
+
+  /**
+   * Returns the size of the given counter as of the last {@link #publish()}. May be called on any
+   * thread.
+   */
+  int publishedSize(Counter counter) {
+    return publishedSizes[counter.index];
+  }
+
+  /** Makes the current counts visible to {@link #publishedSize(Counter)}. */
+  void publish() {
+    int[] sizes = new int[counters.size()];
+    for (Counter counter : counters.values()) {
+      sizes[counter.index] = counter.size;
+    }
+    publishedSizes = sizes;
+  }
+
+  /**
+   * Returns the number of microbot types that have at least one microbot remaining. Must be called
+   * on the simulation thread.
+   */
+  int remainingTypes() {
+    int remainingTypes = 0;
+    for (Counter counter : counters.values()) {
+      if (counter.size() > 0) {
+        remainingTypes++;
+      }
+    }
+    return remainingTypes;
+  }
+
+  /** Records that a microbot named {@code fromName} was hacked into one named {@code toName}. */
+  void recordConversion(String fromName, String toName) {
+    counters.get(fromName).size--;
+    counters.get(toName).size++;
+  }
+
+  /** Returns new counts of the given microbots. */
+  static PopulationCounts of(Iterable<Microbot> microbots) {
+    checkNotNull(microbots);
+    LinkedHashMap<String, Counter> counters = new LinkedHashMap<>();
+    for (Microbot microbot : microbots) {
+      counters.computeIfAbsent(
+              microbot.name(), name -> new Counter(counters.size(), name, microbot.color()))
+          .size++;
+    }
+    return new PopulationCounts(ImmutableMap.copyOf(counters));
+  }
+
+  /** The running population count of a single microbot type. */
+  static final class Counter {
+
+    private final int index;
+    private final String name;
+    private final Color color;
+    private int size;
+
+    private Counter(int index, String name, Color color) {
+      this.index = index;
+      this.name = name;
+      this.color = color;
+    }
+
+    /** Returns the name of the microbots counted. */
+    String name() {
+      return name;
+    }
+
+    /** Returns the color of the microbots counted. */
+    Color color() {
+      return color;
+    }
+
+    /**
+     * Returns the current number of microbots of this type. Must be called on the simulation
+     * thread; other threads use {@link PopulationCounts#publishedSize(Counter)}.
+     */
+    int size() {
+      return size;
+    }
+  }
+}
@@ -2,15 +2,12 @@ package microbots.core;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import java.awt.Color;
-import java.util.Collection;
-import java.util.Map;
-import java.util.function.Function;
+import java.util.stream.Stream;
 
 /** Represents a snapshot of all microbot populations at a given point in time. */
 final class PopulationSnapshot {
@@ -64,21 +61,32 @@ final class PopulationSnapshot {
     return System.currentTimeMillis() - creationTimeMillis > ageInMillis;
   }
 
-  /** Returns a new snapshot of the given arena. */
+  /**
+   * Returns a new snapshot of the given arena as of the last round it {@link Arena#publishFrame()
+   * published}. May be called on any thread.
+   */
   static PopulationSnapshot of(Arena arena) {
     checkNotNull(arena);
+    PopulationCounts counts = arena.populationCounts();
+    return create(
+        arena, counts.counters().stream().map(counter -> Population.from(counter, counts)));
+  }
+
+  /**
+   * Returns a new snapshot of the given arena as it currently is. Must be called on the simulation
+   * thread.
+   */
+  static PopulationSnapshot current(Arena arena) {
+    checkNotNull(arena);
+    return create(arena, arena.populationCounts().counters().stream().map(Population::from));
+  }
 
-    ImmutableList<Population> populations =
-        arena
-            .microbots()
-            .stream()
-            .collect(toImmutableSetMultimap(Microbot::name, Function.identity()))
-            .asMap()
-            .entrySet()
-            .stream()
-            .map(Population::from)
-            .collect(toImmutableList());
-    return new PopulationSnapshot(arena, populations, System.currentTimeMillis());
+  /** Returns a new snapshot of the given arena with the nonempty populations given. */
+  private static PopulationSnapshot create(Arena arena, Stream<Population> populations) {
+    return new PopulationSnapshot(
+        arena,
+        populations.filter(population -> population.size() > 0).collect(toImmutableList()),
+        System.currentTimeMillis());
   }
 
   /** Represents the population of a specific microbot type at a point in time. */
@@ -109,12 +117,14 @@ final class PopulationSnapshot {
       return color;
     }
 
-    /** Returns a population from the given entry. */
-    private static Population from(Map.Entry<String, Collection<Microbot>> entry) {
-      return new Population(
-          entry.getKey(),
-          entry.getValue().size(),
-          entry.getValue().stream().findAny().map(Microbot::color).orElse(Color.WHITE));
+    /** Returns a population from the current value of the given counter. */
+    private static Population from(PopulationCounts.Counter counter) {
+      return new Population(counter.name(), counter.size(), counter.color());
+    }
+
+    /** Returns a population from the published value of the given counter. */
+    private static Population from(PopulationCounts.Counter counter, PopulationCounts counts) {
+      return new Population(counter.name(), counts.publishedSize(counter), counter.color());
     }
   }
 }
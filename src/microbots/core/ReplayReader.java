@@ -0,0 +1,239 @@
+package microbots.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Reads a replay in the format written by {@link ReplayRecorder}, and plays it back to the state of
+ * the arena after its last round. Every event is checked against the state the replay has reached,
+ * e.g. that a move is into a free, traversable cell, so that a replay that reads back without error
+ * is one that is consistent with the rules of the simulation.
+ */
+final class ReplayReader {
+
+  private static final int NO_MICROBOT = -1;
+
+  private final InputStream in;
+
+  private int rows;
+  private int columns;
+  private BitSet traversable;
+  private ImmutableList<String> mpuTypeNames;
+  private int[] mpuTypeIds;
+  private Direction[] facings;
+  private int[] cells;
+
+  /** The ID of the microbot in each cell, or {@link #NO_MICROBOT}, indexed by flat cell index. */
+  private int[] grid;
+
+  private int rounds;
+
+  private ReplayReader(InputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * Reads the replay at the given path and plays it back to the end.
+   *
+   * @throws IllegalArgumentException if the file is not a well-formed replay
+   */
+  static ReplayReader read(Path path) throws IOException {
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+      ReplayReader reader = new ReplayReader(in);
+      reader.readHeader();
+      while (reader.readRound()) {
+        reader.rounds++;
+      }
+      return reader;
+    }
+  }
+
+  /** Returns the number of rows in the arena. */
+  int rows() {
+    return rows;
+  }
+
+  /** Returns the number of columns in the arena. */
+  int columns() {
+    return columns;
+  }
+
+  /** Returns the fully qualified name of each MPU type, in order of type ID. */
+  ImmutableList<String> mpuTypeNames() {
+    return mpuTypeNames;
+  }
+
+  /** Returns the number of complete rounds in the replay. */
+  int rounds() {
+    return rounds;
+  }
+
+  /** Returns the number of microbots in the arena. */
+  int microbotCount() {
+    return cells.length;
+  }
+
+  /** Returns the MPU type ID of the given microbot at the end of the replay. */
+  int mpuTypeId(int microbot) {
+    return mpuTypeIds[microbot];
+  }
+
+  /** Returns the direction the given microbot is facing at the end of the replay. */
+  Direction facing(int microbot) {
+    return facings[microbot];
+  }
+
+  /** Returns the flat index of the cell of the given microbot at the end of the replay. */
+  int cell(int microbot) {
+    return cells[microbot];
+  }
+
+  private void readHeader() throws IOException {
+    int magic = 0;
+    for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+      magic |= readByte() << shift;
+    }
+    checkArgument(magic == ReplayRecorder.MAGIC, "Not a replay.");
+    int version = readVarint();
+    checkArgument(version == ReplayRecorder.VERSION, "Unsupported replay version %s.", version);
+
+    rows = readVarint();
+    columns = readVarint();
+    checkArgument(rows > 0 && columns > 0, "Replay arena is %sx%s.", rows, columns);
+    checkArgument((long) rows * columns <= Integer.MAX_VALUE, "Replay arena has too many cells.");
+    int cellCount = rows * columns;
+    traversable = new BitSet(cellCount);
+    boolean traversableRun = true;
+    for (int cell = 0; cell < cellCount; traversableRun = !traversableRun) {
+      int runLength = readVarint();
+      checkArgument(runLength <= cellCount - cell, "Replay terrain overruns the arena.");
+      if (traversableRun) {
+        traversable.set(cell, cell + runLength);
+      }
+      cell += runLength;
+    }
+
+    ImmutableList.Builder<String> mpuTypeNames = ImmutableList.builder();
+    int mpuTypeCount = readVarint();
+    for (int i = 0; i < mpuTypeCount; i++) {
+      byte[] name = new byte[readVarint()];
+      for (int j = 0; j < name.length; j++) {
+        name[j] = (byte) readByte();
+      }
+      mpuTypeNames.add(new String(name, StandardCharsets.UTF_8));
+    }
+    this.mpuTypeNames = mpuTypeNames.build();
+
+    int microbotCount = readVarint();
+    checkArgument(microbotCount <= traversable.cardinality(), "Replay has too many microbots.");
+    mpuTypeIds = new int[microbotCount];
+    facings = new Direction[microbotCount];
+    cells = new int[microbotCount];
+    grid = new int[cellCount];
+    Arrays.fill(grid, NO_MICROBOT);
+    for (int microbot = 0; microbot < microbotCount; microbot++) {
+      int typeAndFacing = readVarint();
+      mpuTypeIds[microbot] = typeAndFacing >>> 2;
+      checkArgument(mpuTypeIds[microbot] < mpuTypeCount, "Replay has an unknown MPU type.");
+      facings[microbot] = Direction.of(typeAndFacing & 3);
+      int cell = readVarint();
+      checkArgument(
+          cell < cellCount && traversable.get(cell) && grid[cell] == NO_MICROBOT,
+          "Microbot %s is placed in cell %s, which is not free.",
+          microbot,
+          cell);
+      cells[microbot] = cell;
+      grid[cell] = microbot;
+    }
+  }
+
+  /** Plays back the next round, and returns whether there was one. */
+  private boolean readRound() throws IOException {
+    int event = readVarintOrEnd();
+    if (event == -1) {
+      return false;
+    }
+    for (int microbot = -1; event != 0; event = readVarint()) {
+      microbot += event >>> 2;
+      checkArgument(microbot < cells.length, "Round %s has an unknown microbot.", rounds);
+      int facedCell = facedCell(microbot);
+      switch (event & 3) {
+        case ReplayRecorder.MOVE:
+          checkArgument(
+              traversable.get(facedCell) && grid[facedCell] == NO_MICROBOT,
+              "Microbot %s moves into an occupied cell in round %s.",
+              microbot,
+              rounds);
+          grid[cells[microbot]] = NO_MICROBOT;
+          grid[facedCell] = microbot;
+          cells[microbot] = facedCell;
+          break;
+        case ReplayRecorder.ROTATE_LEFT:
+          facings[microbot] = facings[microbot].clockwise270();
+          break;
+        case ReplayRecorder.ROTATE_RIGHT:
+          facings[microbot] = facings[microbot].clockwise90();
+          break;
+        case ReplayRecorder.HACK:
+          int target = grid[facedCell];
+          checkArgument(
+              target != NO_MICROBOT && mpuTypeIds[target] != mpuTypeIds[microbot],
+              "Microbot %s hacks no enemy in round %s.",
+              microbot,
+              rounds);
+          mpuTypeIds[target] = mpuTypeIds[microbot];
+          break;
+        default:
+          throw new AssertionError();
+      }
+    }
+    return true;
+  }
+
+  /** Returns the flat index of the cell the given microbot is facing, wrapping around the edges. */
+  private int facedCell(int microbot) {
+    Direction facing = facings[microbot];
+    int row = Math.floorMod(cells[microbot] / columns + facing.rowOffset(), rows);
+    int column = Math.floorMod(cells[microbot] % columns + facing.columnOffset(), columns);
+    return row * columns + column;
+  }
+
+  private int readByte() throws IOException {
+    int b = in.read();
+    checkArgument(b != -1, "Replay is truncated.");
+    return b;
+  }
+
+  private int readVarint() throws IOException {
+    int value = readVarintOrEnd();
+    checkArgument(value != -1, "Replay is truncated.");
+    return value;
+  }
+
+  /** Reads a varint, or returns -1 if the stream ends before its first byte. */
+  private int readVarintOrEnd() throws IOException {
+    int b = in.read();
+    if (b == -1) {
+      return -1;
+    }
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      checkArgument(shift < Integer.SIZE, "Replay has a malformed varint.");
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        checkArgument(value >= 0, "Replay has a malformed varint.");
+        return value;
+      }
+      b = readByte();
+    }
+  }
+}
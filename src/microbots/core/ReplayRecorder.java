@@ -0,0 +1,266 @@
+package microbots.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a replay of a simulation to a file: the initial state of the arena, followed by every
+ * change that each round makes to it. The simulation thread encodes the replay into buffers, which
+ * are written to the file on a background thread, so that recording costs the simulation little
+ * more than the encoding itself.
+ *
+ * <p>Integers in a replay are unsigned varints, i.e. seven bits per byte, least significant group
+ * first, with the high bit set on every byte but the last. A replay consists of:
+ *
+ * <ul>
+ *   <li>The {@link #MAGIC} number, as four bytes, and the format {@link #VERSION}.
+ *   <li>The number of rows and columns of the arena, followed by its terrain, as the lengths of
+ *       alternating runs of traversable and non-traversable cells in order of their flat indices,
+ *       starting with a traversable run, which may be empty.
+ *   <li>The number of MPU types, followed by the fully qualified name of each, in order of type ID,
+ *       as a length and that many bytes of UTF-8.
+ *   <li>The number of microbots, followed by {@code typeId * 4 + facing} and then the cell of each,
+ *       in order of microbot ID, where {@code facing} is the ordinal of its {@link Direction}.
+ *   <li>Each round, as a sequence of events terminated by a zero. Each event is {@code (microbot -
+ *       previous) * 4 + kind}, where {@code microbot} is the ID of the microbot that acted, {@code
+ *       previous} is the ID of the one before it in the same round, or -1 for the first, and {@code
+ *       kind} is one of {@link #MOVE}, {@link #ROTATE_LEFT}, {@link #ROTATE_RIGHT} or {@link
+ *       #HACK}. Since microbots act in order of ID, the difference is always positive, which keeps
+ *       it short and leaves zero free to terminate the round.
+ * </ul>
+ *
+ * <p>Only actions that change the arena are recorded, and their outcome is implied by the state
+ * the replay has reached so far: a move takes the microbot to the cell it is facing, and a hack
+ * converts the microbot in that cell to the MPU type of the hacker. {@link ReplayReader} plays
+ * replays back.
+ */
+final class ReplayRecorder {
+
+  /** The first four bytes of every replay, {@code "MBRP"}. */
+  static final int MAGIC = 'M' | 'B' << 8 | 'R' << 16 | 'P' << 24;
+
+  static final int VERSION = 1;
+
+  /** The kind of event for a microbot that moved. */
+  static final int MOVE = 0;
+
+  /** The kind of event for a microbot that rotated 90 degrees counterclockwise. */
+  static final int ROTATE_LEFT = 1;
+
+  /** The kind of event for a microbot that rotated 90 degrees clockwise. */
+  static final int ROTATE_RIGHT = 2;
+
+  /** The kind of event for a microbot that converted the microbot it is facing. */
+  static final int HACK = 3;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The number of buffers in circulation. When all of them are waiting to be written, the
+   * simulation blocks until one is free again, so that a slow disk cannot make the replay use
+   * unbounded memory.
+   */
+  private static final int BUFFER_COUNT = 4;
+
+  /** The most bytes that a single varint takes. */
+  private static final int MAX_VARINT_BYTES = 5;
+
+  private final FileChannel channel;
+  private final ExecutorService writer;
+  private final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(BUFFER_COUNT);
+
+  /** The buffer that the simulation thread is currently encoding into. */
+  private byte[] buffer;
+
+  private int position;
+
+  /** The ID of the last microbot to have acted in the current round, or -1. */
+  private int previousMicrobot = -1;
+
+  /** The first failure to write to the file, which is rethrown on the simulation thread. */
+  private volatile IOException failure;
+
+  private ReplayRecorder(FileChannel channel) {
+    this.channel = channel;
+    this.writer =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("replay-writer-%d").setDaemon(true).build());
+    for (int i = 1; i < BUFFER_COUNT; i++) {
+      freeBuffers.add(new byte[BUFFER_SIZE]);
+    }
+    this.buffer = new byte[BUFFER_SIZE];
+  }
+
+  /**
+   * Creates a new recorder that writes to the given path, replacing any file already there, and
+   * records the initial state of the given arena.
+   */
+  static ReplayRecorder create(Path path, Arena arena, MicrobotStore microbots) {
+    ReplayRecorder recorder;
+    try {
+      recorder =
+          new ReplayRecorder(
+              FileChannel.open(
+                  path,
+                  StandardOpenOption.WRITE,
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.TRUNCATE_EXISTING));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    recorder.writeHeader(arena.terrain(), microbots);
+    return recorder;
+  }
+
+  /** Records that the given microbot moved to the cell it is facing. */
+  void recordMove(int microbot) {
+    writeEvent(microbot, MOVE);
+  }
+
+  /** Records that the given microbot rotated 90 degrees counterclockwise. */
+  void recordRotateLeft(int microbot) {
+    writeEvent(microbot, ROTATE_LEFT);
+  }
+
+  /** Records that the given microbot rotated 90 degrees clockwise. */
+  void recordRotateRight(int microbot) {
+    writeEvent(microbot, ROTATE_RIGHT);
+  }
+
+  /** Records that the given microbot converted the microbot it is facing. */
+  void recordHack(int microbot) {
+    writeEvent(microbot, HACK);
+  }
+
+  /** Records the end of the current round. */
+  void endRound() {
+    writeVarint(0);
+    previousMicrobot = -1;
+  }
+
+  /**
+   * Writes out everything recorded so far, waits for it to reach the file, and closes the file.
+   * The recorder must not be used afterwards.
+   */
+  void close() {
+    submit(buffer, position);
+    buffer = null;
+    writer.shutdown();
+    try {
+      writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      channel.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    checkFailure();
+  }
+
+  private void writeHeader(TerrainGrid terrain, MicrobotStore microbots) {
+    for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+      writeByte(MAGIC >>> shift);
+    }
+    writeVarint(VERSION);
+
+    writeVarint(terrain.rows());
+    writeVarint(terrain.columns());
+    boolean traversable = true;
+    int runStart = 0;
+    for (int cell = 0; cell < terrain.cellCount(); cell++) {
+      if (terrain.isTraversable(cell) != traversable) {
+        writeVarint(cell - runStart);
+        traversable = !traversable;
+        runStart = cell;
+      }
+    }
+    writeVarint(terrain.cellCount() - runStart);
+
+    writeVarint(microbots.mpuTypes().size());
+    for (Class<?> mpuType : microbots.mpuTypes()) {
+      byte[] name = mpuType.getName().getBytes(StandardCharsets.UTF_8);
+      writeVarint(name.length);
+      for (byte b : name) {
+        writeByte(b);
+      }
+    }
+
+    writeVarint(microbots.size());
+    for (int microbot = 0; microbot < microbots.size(); microbot++) {
+      writeVarint(microbots.mpuTypeId(microbot) * 4 + microbots.facing(microbot).ordinal());
+      writeVarint(microbots.cell(microbot));
+    }
+  }
+
+  private void writeEvent(int microbot, int kind) {
+    writeVarint((microbot - previousMicrobot) << 2 | kind);
+    previousMicrobot = microbot;
+  }
+
+  private void writeVarint(int value) {
+    if (position > BUFFER_SIZE - MAX_VARINT_BYTES) {
+      flip();
+    }
+    while ((value & ~0x7F) != 0) {
+      buffer[position++] = (byte) (value & 0x7F | 0x80);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte) value;
+  }
+
+  private void writeByte(int value) {
+    if (position == BUFFER_SIZE) {
+      flip();
+    }
+    buffer[position++] = (byte) value;
+  }
+
+  /** Hands the current buffer to the writer, and continues with a free one. */
+  private void flip() {
+    checkFailure();
+    submit(buffer, position);
+    try {
+      buffer = freeBuffers.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    position = 0;
+  }
+
+  /** Writes the first {@code length} bytes of the given buffer on the writer thread. */
+  private void submit(byte[] buffer, int length) {
+    writer.execute(
+        () -> {
+          try {
+            if (failure == null) {
+              ByteBuffer contents = ByteBuffer.wrap(buffer, 0, length);
+              while (contents.hasRemaining()) {
+                channel.write(contents);
+              }
+            }
+          } catch (IOException e) {
+            failure = e;
+          } finally {
+            freeBuffers.add(buffer);
+          }
+        });
+  }
+
+  private void checkFailure() {
+    if (failure != null) {
+      throw new RuntimeException("Failed to write replay.", failure);
+    }
+  }
+}
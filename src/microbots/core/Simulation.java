@@ -4,12 +4,16 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.collect.ImmutableCollection;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.primitives.Longs;
+import java.nio.file.Path;
 import java.util.HashSet;
-import java.util.Optional;
-import java.util.function.BiConsumer;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import microbots.Action;
 import microbots.MicrobotProcessingUnit;
 import microbots.State;
@@ -18,6 +22,8 @@ import microbots.core.Events.SimulationRateChangedEvent;
 import microbots.core.Events.SimulationRoundDoneEvent;
 import microbots.core.Events.SimulationRunCalledEvent;
 import microbots.core.Events.WindowRepaintDoneEvent;
+import microbots.core.Events.WindowRepaintDoneListener;
+import microbots.core.SimulationRate.Pacing;
 
 /**
  * Entry point for configuring a microbot battle simulation. Example usage:
@@ -33,11 +39,16 @@ import microbots.core.Events.WindowRepaintDoneEvent;
  *       .start();
  * </pre>
  */
-public final class Simulation implements Runnable {
+public final class Simulation implements Runnable, WindowRepaintDoneListener {
 
-  /** Simple functional interface to provide type clarity for the {@link #ACTION_DELEGATES} map. */
+  /**
+   * Simple functional interface to provide type clarity for the {@link #ACTION_DELEGATES} map. The
+   * delegate is handed the ID of the microbot taking the action.
+   */
   @FunctionalInterface
-  private interface ActionDelegate extends BiConsumer<Simulation, Microbot> {}
+  private interface ActionDelegate {
+    void accept(Simulation simulation, int microbot);
+  }
 
   /**
    * Maps {@link Action microbot actions} to {@link ActionDelegate delegates} for handling each
@@ -51,22 +62,47 @@ public final class Simulation implements Runnable {
           Action.ROTATE_RIGHT, Simulation::handleRotateRight,
           Action.HACK, Simulation::handleHack);
 
-  private boolean terminationRequested = false;
-  private boolean windowRepaintDoneCalled = false;
+  /** The shortest time to sleep while waiting for a repaint, so as not to busy-wait. */
+  private static final long MIN_REPAINT_POLL_MILLIS = 1L;
 
-  private final ImmutableList<Microbot> microbots;
+  // Set by other threads (the UI, or the thread of the simulation that replaces this one) and
+  // polled by the simulation thread, so these must be volatile.
+  private volatile boolean terminationRequested = false;
+  private volatile boolean windowRepaintDoneCalled = false;
+  private volatile SimulationRate simulationRate;
+
+  private final MicrobotStore microbots;
   private final Arena arena;
-  private SimulationRate simulationRate;
+  private final boolean parallel;
+
+  /** Records a replay of this simulation, or null if no replay is being recorded. */
+  private final ReplayRecorder replay;
+
+  /**
+   * Holds the action each microbot decided on during the read phase of a parallel round, indexed
+   * the same as {@link #microbots}. Only allocated for parallel simulations.
+   */
+  private final Action[] decidedActions;
+
+  /** The number of rounds in each batch when running at a {@link Pacing#BATCHED batched} rate. */
+  private int roundsPerBatch = 1;
 
   private Simulation(
-      ImmutableList<Microbot> microbots, Arena arena, SimulationRate simulationRate) {
+      MicrobotStore microbots,
+      Arena arena,
+      boolean parallel,
+      ReplayRecorder replay,
+      SimulationRate simulationRate) {
     this.microbots = microbots;
     this.arena = arena;
+    this.parallel = parallel;
+    this.replay = replay;
     this.simulationRate = simulationRate;
+    this.decidedActions = parallel ? new Action[microbots.size()] : null;
   }
 
-  /** Returns the list of {@link Microbot Microbots} participating in this {@link Simulation}. */
-  ImmutableList<Microbot> microbots() {
+  /** Returns the {@link Microbot Microbots} participating in this {@link Simulation}. */
+  MicrobotStore microbots() {
     return microbots;
   }
 
@@ -85,7 +121,7 @@ public final class Simulation implements Runnable {
     simulationRate = event.simulationRate();
   }
 
-  @Subscribe
+  @Override
   public void onWindowRepaintDone(WindowRepaintDoneEvent event) {
     windowRepaintDoneCalled = true;
   }
@@ -95,21 +131,109 @@ public final class Simulation implements Runnable {
   public void run() {
     Events.post(new SimulationRunCalledEvent(this));
 
-    while (!terminationRequested) {
+    long nextRoundNanos = System.nanoTime();
+    try {
+      while (!terminationRequested) {
+        switch (simulationRate.pacing()) {
+          case LOCKSTEP:
+            doRound();
+            arena.publishFrame();
+            awaitRepaint(simulationRate.millisPerRound());
+            nextRoundNanos = System.nanoTime();
+            break;
+          case BATCHED:
+            doBatch();
+            arena.publishFrame();
+            awaitRepaint(MIN_REPAINT_POLL_MILLIS);
+            nextRoundNanos = System.nanoTime();
+            break;
+          case FREE_RUNNING:
+            doRound();
+            arena.publishFrame();
+            nextRoundNanos = awaitNextRound(nextRoundNanos);
+            break;
+        }
+      }
+    } finally {
+      Events.unregister(this);
+      closeReplay();
+    }
+  }
+
+  /**
+   * Asks the window to repaint, and then waits until it has done so, checking every {@code
+   * pollMillis}. At least {@code pollMillis} elapses even if the window repaints sooner.
+   */
+  private void awaitRepaint(long pollMillis) {
+    windowRepaintDoneCalled = false;
+    Events.post(SimulationRoundDoneEvent.INSTANCE);
+    do {
+      try {
+        Thread.sleep(pollMillis);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    } while (!windowRepaintDoneCalled);
+  }
+
+  /**
+   * Performs a batch of {@link #roundsPerBatch} rounds, and then adjusts the size of the next batch
+   * so that it takes about {@link SimulationRate#millisPerRound()}. The size changes by at most a
+   * factor of two per batch, so that a single slow round, e.g. one interrupted by garbage
+   * collection, does not throw it off.
+   */
+  private void doBatch() {
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < roundsPerBatch && !terminationRequested; i++) {
       doRound();
+    }
+    long elapsedNanos = Math.max(1L, System.nanoTime() - startNanos);
+
+    long budgetNanos = TimeUnit.MILLISECONDS.toNanos(simulationRate.millisPerRound());
+    long fittingRounds = roundsPerBatch * budgetNanos / elapsedNanos;
+    roundsPerBatch =
+        (int)
+            Longs.constrainToRange(
+                fittingRounds, Math.max(1, roundsPerBatch / 2), 2L * roundsPerBatch);
+  }
 
-      windowRepaintDoneCalled = false;
-      Events.post(new SimulationRoundDoneEvent());
-      do {
-        try {
-          Thread.sleep(simulationRate.millisPerRound());
-        } catch (Exception e) {
-          throw new RuntimeException(e);
-        }
-      } while (!windowRepaintDoneCalled);
+  /**
+   * Waits until {@code roundStartNanos} plus {@link SimulationRate#millisPerRound()}, without
+   * waiting for the window, and returns the start time of the round after that. Rounds are paced
+   * against fixed deadlines rather than by sleeping a fixed amount after each round, so the time
+   * spent executing a round counts towards its allotment. If the simulation has fallen behind, the
+   * next round starts immediately, and the schedule is reset rather than catching up in a burst.
+   */
+  private long awaitNextRound(long roundStartNanos) {
+    long nextRoundNanos =
+        roundStartNanos + TimeUnit.MILLISECONDS.toNanos(simulationRate.millisPerRound());
+    long nowNanos = System.nanoTime();
+    if (nowNanos - nextRoundNanos >= 0) {
+      return nowNanos;
     }
+    do {
+      LockSupport.parkNanos(nextRoundNanos - nowNanos);
+      nowNanos = System.nanoTime();
+    } while (nowNanos - nextRoundNanos < 0);
+    return nextRoundNanos;
+  }
 
-    Events.unregister(this);
+  /**
+   * Runs the simulation on the calling thread without any UI. Rounds are executed back-to-back
+   * until either a single microbot type remains or {@code maxRounds} rounds have been executed,
+   * whichever happens first.
+   */
+  SimulationResult runHeadless(int maxRounds) {
+    int roundsExecuted = 0;
+    try {
+      while (roundsExecuted < maxRounds && arena.populationCounts().remainingTypes() > 1) {
+        doRound();
+        roundsExecuted++;
+      }
+    } finally {
+      closeReplay();
+    }
+    return SimulationResult.of(PopulationSnapshot.current(arena), roundsExecuted);
   }
 
   /**
@@ -117,14 +241,64 @@ public final class Simulation implements Runnable {
    * to perform one action.
    */
   void doRound() {
-    microbots.forEach(this::processAction);
+    if (parallel) {
+      doParallelRound();
+    } else {
+      for (int microbot = 0; microbot < microbots.size(); microbot++) {
+        applyAction(microbot, decideAction(microbot));
+      }
+    }
+    if (replay != null) {
+      replay.endRound();
+    }
+  }
+
+  /**
+   * Writes out the rest of the replay, if one is being recorded. This is called however the
+   * simulation ends, including by an exception, so that neither the file nor the writer thread
+   * is leaked, and must be called by anything else that runs rounds with {@link #doRound()}.
+   */
+  void closeReplay() {
+    if (replay != null) {
+      replay.close();
+    }
+  }
+
+  /**
+   * Performs a single round in two phases. In the read phase, every microbot decides on an action
+   * concurrently, against the arena as it stood at the start of the round. In the resolve phase,
+   * the decided actions are applied one at a time in order of microbot ID, so the outcome is
+   * deterministic regardless of how the read phase was scheduled. Conflicts resolve in favor of
+   * whichever microbot comes first in that order:
+   *
+   * <ul>
+   *   <li>A move into a cell that an earlier microbot has since moved into does nothing.
+   *   <li>A hack of a microbot that has since moved away, or that is no longer an enemy because
+   *       either party was hacked earlier in the round, does nothing.
+   *   <li>A microbot that is hacked still performs the action it decided on before it was hacked.
+   * </ul>
+   *
+   * <p>The outcome is deterministic, but it is not the outcome of a serial round, in which each
+   * microbot decides against the arena as the microbots before it left it.
+   */
+  private void doParallelRound() {
+    IntStream.range(0, microbots.size())
+        .parallel()
+        .forEach(microbot -> decidedActions[microbot] = decideAction(microbot));
+    for (int microbot = 0; microbot < decidedActions.length; microbot++) {
+      applyAction(microbot, decidedActions[microbot]);
+    }
   }
 
-  /** Performs a single action for the specified microbot. */
-  private void processAction(Microbot microbot) {
+  /** Returns the action that the specified microbot chooses, given its current state. */
+  private Action decideAction(int microbot) {
     Surroundings surroundings = arena.getMicrobotSurroundings(microbot);
-    State state = new State(microbot.facing().simpleDirection(), surroundings);
-    Action action = microbot.getAction(state);
+    State state = State.of(microbots.facing(microbot).simpleDirection(), surroundings);
+    return microbots.getAction(microbot, state);
+  }
+
+  /** Performs the given action for the specified microbot. */
+  private void applyAction(int microbot, Action action) {
     ActionDelegate delegate =
         ACTION_DELEGATES.getOrDefault(action, Simulation::handleUnknownAction);
 
@@ -132,33 +306,42 @@ public final class Simulation implements Runnable {
   }
 
   /** Delegate for {@link Action#WAIT}. */
-  private void handleWait(Microbot microbot) {
+  private void handleWait(int microbot) {
     // Do nothing!
   }
 
   /** Delegate for {@link Action#MOVE}. */
-  private void handleMove(Microbot microbot) {
-    arena.moveMicrobot(microbot);
+  private void handleMove(int microbot) {
+    if (arena.moveMicrobot(microbot) && replay != null) {
+      replay.recordMove(microbot);
+    }
   }
 
   /** Delegate for {@link Action#ROTATE_LEFT}. */
-  private void handleRotateLeft(Microbot microbot) {
-    microbot.rotateLeft();
+  private void handleRotateLeft(int microbot) {
+    arena.rotateMicrobotLeft(microbot);
+    if (replay != null) {
+      replay.recordRotateLeft(microbot);
+    }
   }
 
   /** Delegate for {@link Action#ROTATE_RIGHT}. */
-  private void handleRotateRight(Microbot microbot) {
-    microbot.rotateRight();
+  private void handleRotateRight(int microbot) {
+    arena.rotateMicrobotRight(microbot);
+    if (replay != null) {
+      replay.recordRotateRight(microbot);
+    }
   }
 
   /** Delegate for {@link Action#HACK}. */
-  private void handleHack(Microbot microbot) {
-    Optional<Microbot> other = arena.getFacedMicrobot(microbot);
-    other.ifPresent(microbot::hack);
+  private void handleHack(int microbot) {
+    if (arena.hackFacedMicrobot(microbot) && replay != null) {
+      replay.recordHack(microbot);
+    }
   }
 
   /** Fallback delegate for actions that aren't handled. */
-  private void handleUnknownAction(Microbot microbot) {
+  private void handleUnknownAction(int microbot) {
     throw new RuntimeException("Action not handled!");
   }
 
@@ -166,7 +349,6 @@ public final class Simulation implements Runnable {
   public static Builder builder() {
     return new Builder()
         .setPopulationSize(SimulationDefaults.POPULATION_SIZE)
-        .setArenaMap(SimulationDefaults.ARENA_MAP)
         .setSimulationRate(SimulationDefaults.SIMULATION_RATE);
   }
 
@@ -174,7 +356,18 @@ public final class Simulation implements Runnable {
   public static final class Builder {
 
     private int populationSize;
-    private ArenaMap arenaMap;
+    private boolean parallel;
+    private Long seed;
+
+    /**
+     * Supplies the terrain of the simulation, or else null to use {@link
+     * SimulationDefaults#ARENA_MAP}. Built-in maps are only resolved in {@link #build()}, and the
+     * default map is not referenced at all unless no other terrain is set, so that a builder only
+     * ever loads the map it ends up using.
+     */
+    private Supplier<TerrainGrid> terrain;
+
+    private Path replayFile;
     private SimulationRate simulationRate;
     private final HashSet<Class<? extends MicrobotProcessingUnit>> mpuTypes = new HashSet<>();
 
@@ -197,6 +390,56 @@ public final class Simulation implements Runnable {
       return this;
     }
 
+    /**
+     * Sets whether rounds are executed in parallel. In a parallel simulation, every microbot
+     * decides on its action concurrently against the arena as it stood at the start of the round,
+     * and the actions are then applied in a fixed order. This scales well when microbot decision
+     * logic is expensive, but note that microbots no longer see the effects of actions taken
+     * earlier in the same round. Defaults to false.
+     *
+     * <p>Because of that, the two engines play out different battles: a simulation with a given
+     * {@link #setSeed(long) seed} is reproducible on the engine it was run on, but the same seed
+     * and parameters on the other engine generally lead to a different outcome.
+     */
+    public Builder setParallel(boolean parallel) {
+      this.parallel = parallel;
+      return this;
+    }
+
+    /**
+     * Sets the seed for all random choices made while setting up the simulation, such as where
+     * microbots are placed and which direction they initially face. Simulations built with the same
+     * seed and parameters play out identically, provided that their MPUs are deterministic and
+     * they run on the same {@link #setParallel(boolean) engine}; switching between the serial and
+     * parallel engines changes the battle. If no seed is set, a different one is chosen for every
+     * simulation.
+     */
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * Sets the terrain that the simulation is played out on, such as a map {@link
+     * TerrainGrid#load(java.nio.file.Path) loaded} from a file. Defaults to one of the built-in
+     * maps.
+     */
+    public Builder setTerrain(TerrainGrid terrain) {
+      checkNotNull(terrain);
+      this.terrain = () -> terrain;
+      return this;
+    }
+
+    /**
+     * Sets a file to record a replay of the simulation to, replacing any file already there. The
+     * replay holds the initial state of the arena and every move, rotation and hack of every round,
+     * in a compact binary format. By default, no replay is recorded.
+     */
+    public Builder setReplayFile(Path replayFile) {
+      this.replayFile = checkNotNull(replayFile);
+      return this;
+    }
+
     /**
      * Builds a simulation based on the parameters of this builder, and then starts it in a new
      * window.
@@ -206,6 +449,16 @@ public final class Simulation implements Runnable {
       startInternal();
     }
 
+    /**
+     * Builds a simulation based on the parameters of this builder and runs it to completion on the
+     * calling thread, without creating a window. The simulation ends when only one microbot type
+     * remains, or after {@code maxRounds} rounds, whichever happens first. Must be positive.
+     */
+    public SimulationResult runHeadless(int maxRounds) {
+      checkArgument(maxRounds > 0, "maxRounds must be positive.");
+      return build(/* view= */ false).runHeadless(maxRounds);
+    }
+
     // PUBLIC API ENDS HERE. Below this point is the internal API.
 
     /**
@@ -220,7 +473,7 @@ public final class Simulation implements Runnable {
 
     /** Sets the arena map to use in the simulation. */
     Builder setArenaMap(ArenaMap arenaMap) {
-      this.arenaMap = checkNotNull(arenaMap);
+      this.terrain = checkNotNull(arenaMap)::terrain;
       return this;
     }
 
@@ -235,13 +488,41 @@ public final class Simulation implements Runnable {
      * thread.
      */
     void startInternal() {
-      ImmutableList<Microbot> microbots = MicrobotFactory.create(populationSize).ofEach(mpuTypes);
-      Arena arena = Arena.builder().withMap(arenaMap).withMicrobots(microbots).build();
-      Simulation simulation = new Simulation(microbots, arena, simulationRate);
+      Simulation simulation = build();
 
       Events.register(simulation);
 
       new Thread(simulation).start();
     }
+
+    /** Returns a new simulation based on the parameters of this builder, for a window. */
+    Simulation build() {
+      return build(/* view= */ true);
+    }
+
+    /**
+     * Returns a new simulation based on the parameters of this builder. If {@code view} is false,
+     * the arena is built {@link Arena.Builder#withView(boolean) without a view}, and the
+     * simulation must only be {@link Simulation#runHeadless(int) run headless}.
+     */
+    private Simulation build(boolean view) {
+      // Each simulation gets its own generator, and each consumer its own split of it, so that
+      // simulations never share random state and a change in how many values one consumer draws
+      // does not perturb the others.
+      SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+      MicrobotStore microbots =
+          MicrobotFactory.create(populationSize, random.split()).ofEach(mpuTypes);
+      Arena arena =
+          Arena.builder()
+              .withTerrain(
+                  terrain != null ? terrain.get() : SimulationDefaults.ARENA_MAP.terrain())
+              .withMicrobots(microbots)
+              .withRandom(random.split())
+              .withView(view)
+              .build();
+      ReplayRecorder replay =
+          replayFile == null ? null : ReplayRecorder.create(replayFile, arena, microbots);
+      return new Simulation(microbots, arena, parallel, replay, simulationRate);
+    }
   }
 }
@@ -2,26 +2,60 @@ package microbots.core;
 
 /** Represents the predefined speeds at which a {@link Simulation} may be run. */
 enum SimulationRate {
-  NORMAL(100L, "Normal - 100 ms"),
-  FAST(50L, "Fast - 50 ms"),
-  FASTER(16L, "Faster - 16 ms"),
-  FASTEST(5L, "Fastest - 5 ms");
+  NORMAL(100L, Pacing.LOCKSTEP, "Normal - 100 ms"),
+  FAST(50L, Pacing.LOCKSTEP, "Fast - 50 ms"),
+  FASTER(16L, Pacing.LOCKSTEP, "Faster - 16 ms"),
+  FASTEST(5L, Pacing.LOCKSTEP, "Fastest - 5 ms"),
+  RAPID(1L, Pacing.FREE_RUNNING, "Rapid - 1 ms, skips frames"),
+  TURBO(16L, Pacing.BATCHED, "Turbo - 16 ms of rounds per frame"),
+  UNCAPPED(0L, Pacing.FREE_RUNNING, "Uncapped - no delay, skips frames");
+
+  /** How a simulation running at a given rate schedules its rounds relative to repaints. */
+  enum Pacing {
+    /**
+     * The simulation waits for the window to repaint after every round, and for at least {@link
+     * SimulationRate#millisPerRound()} to elapse, so that every round is shown.
+     */
+    LOCKSTEP,
+
+    /**
+     * The simulation executes as many rounds as fit in {@link SimulationRate#millisPerRound()}
+     * and then waits for the window to repaint, so that rounds are shown in batches. The number of
+     * rounds per batch adapts to how long rounds take.
+     */
+    BATCHED,
+
+    /**
+     * The simulation starts a round every {@link SimulationRate#millisPerRound()}, or back-to-back
+     * if that is zero, without waiting for the window. Each repaint shows whichever round is most
+     * recent.
+     */
+    FREE_RUNNING
+  }
 
   private final long millisPerRound;
+  private final Pacing pacing;
   private final String description;
 
-  SimulationRate(long millisPerRound, String description) {
+  SimulationRate(long millisPerRound, Pacing pacing, String description) {
     this.millisPerRound = millisPerRound;
+    this.pacing = pacing;
     this.description = description;
   }
 
   /**
-   * Returns the number of milliseconds that this rate allots per simulation round.
+   * Returns the number of milliseconds that this rate allots per simulation round. For {@link
+   * Pacing#BATCHED batched} rates, this is instead the time allotted to each batch of rounds.
    */
   long millisPerRound() {
     return millisPerRound;
   }
 
+  /** Returns how the simulation schedules its rounds at this rate. */
+  Pacing pacing() {
+    return pacing;
+  }
+
   /** Returns a textual representation of this rate, suitable for displaying in the UI. */
   String description() {
     return description;
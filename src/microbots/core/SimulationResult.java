@@ -0,0 +1,55 @@
+package microbots.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import java.util.Optional;
+import microbots.core.PopulationSnapshot.Population;
+
+/** The outcome of a {@link Simulation} that was run headlessly, i.e. without a window. */
+public final class SimulationResult {
+
+  private final ImmutableMap<String, Integer> populations;
+  private final int roundsExecuted;
+
+  private SimulationResult(ImmutableMap<String, Integer> populations, int roundsExecuted) {
+    this.populations = populations;
+    this.roundsExecuted = roundsExecuted;
+  }
+
+  /**
+   * Returns the final population of each microbot type that survived the simulation, keyed by
+   * microbot name. Types that were eliminated entirely are absent.
+   */
+  public ImmutableMap<String, Integer> populations() {
+    return populations;
+  }
+
+  /** Returns the number of rounds that were executed before the simulation stopped. */
+  public int roundsExecuted() {
+    return roundsExecuted;
+  }
+
+  /**
+   * Returns the name of the winning microbot type if exactly one type remains in the arena, or else
+   * {@link Optional#empty()} if the simulation stopped before a winner was decided.
+   */
+  public Optional<String> winner() {
+    return populations.size() == 1
+        ? Optional.of(Iterables.getOnlyElement(populations.keySet()))
+        : Optional.empty();
+  }
+
+  /** Returns a new result from the final snapshot of a simulation. */
+  static SimulationResult of(PopulationSnapshot snapshot, int roundsExecuted) {
+    checkNotNull(snapshot);
+    return new SimulationResult(
+        snapshot
+            .populations()
+            .stream()
+            .collect(toImmutableMap(Population::name, Population::size)),
+        roundsExecuted);
+  }
+}
@@ -1,9 +1,6 @@
 package microbots.core;
 
-import static com.google.common.collect.MoreCollectors.toOptional;
-
 import java.util.Optional;
-import java.util.stream.Stream;
 
 /** Terrain are static, non-microbot features that may be present in the arena. */
 enum Terrain {
@@ -14,6 +11,21 @@ enum Terrain {
   /** A wall blocks microbot movement. */
   WALL('w', false);
 
+  /**
+   * The number of distinct symbols that terrain may have. Symbols are restricted to a single byte
+   * so that map files can be parsed byte by byte, through a lookup table.
+   */
+  static final int SYMBOL_COUNT = 256;
+
+  /** Each terrain, indexed by its symbol, or null for symbols that don't belong to any terrain. */
+  private static final Terrain[] BY_SYMBOL = new Terrain[SYMBOL_COUNT];
+
+  static {
+    for (Terrain terrain : values()) {
+      BY_SYMBOL[terrain.symbol] = terrain;
+    }
+  }
+
   private final char symbol;
   private final boolean isTraversable;
 
@@ -32,6 +44,6 @@ enum Terrain {
    * none.
    */
   static Optional<Terrain> forSymbol(char symbol) {
-    return Stream.of(values()).filter(terrain -> terrain.symbol == symbol).collect(toOptional());
+    return Optional.ofNullable(symbol < SYMBOL_COUNT ? BY_SYMBOL[symbol] : null);
   }
 }
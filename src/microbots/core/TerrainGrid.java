@@ -0,0 +1,313 @@
+package microbots.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.io.Resources;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A compact, immutable grid of {@link Terrain}. Cells are addressed either by {@code (row, column)}
+ * or by their flat index {@code row * columns + column}. Each cell's terrain is stored as a single
+ * byte, and traversability is additionally packed into a bitmap so that the simulation's hot path
+ * never needs to touch the {@link Terrain} enum at all. Both are held in buffers rather than
+ * arrays, so that a grid in the {@link BinaryTerrainFormat binary map format} can be used straight
+ * from a memory-mapped file.
+ *
+ * <p>The grid wraps around at its edges, e.g. the cell north of the top row is in the bottom row.
+ * The {@link #neighbor(int, Direction) neighbors} of every cell are computed once, the first time
+ * any are needed, so that finding one is a single array read rather than modular arithmetic on rows
+ * and columns. The table is not built along with the grid, so that loading a map costs no more
+ * than reading it, and a grid that is never simulated, e.g. one that is only converted, never
+ * builds it at all. Grids with more than {@link #MAX_TABULATED_CELLS} cells are the exception, as
+ * their table would be too large to be worth keeping; their neighbors are always computed on
+ * demand.
+ *
+ * <p>Besides the built-in {@link ArenaMap arena maps}, grids of any size can be loaded from map
+ * files through {@link #load(Path)} and {@link #loadResource(String)}, and simulated with {@link
+ * Simulation.Builder#setTerrain(TerrainGrid)}.
+ */
+public final class TerrainGrid {
+
+  /** The value of {@link #neighbor(int, Direction)} for a neighbor that is not traversable. */
+  static final int WALL = -1;
+
+  /** The largest number of cells for which a grid keeps a table of {@link #neighbors}. */
+  private static final int MAX_TABULATED_CELLS = 1 << 22;
+
+  private static final Terrain[] TERRAIN_VALUES = Terrain.values();
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  private final int rows;
+  private final int columns;
+  private final int cellCount;
+  private final int traversableCount;
+
+  /** The ordinal of each cell's terrain, indexed by flat cell index. */
+  private final ByteBuffer terrain;
+
+  /**
+   * A bitmap of the traversable cells, in which cell {@code i} is bit {@code i % 64} of word {@code
+   * i / 64}.
+   */
+  private final LongBuffer traversable;
+
+  /** Whether this grid has few enough cells to keep a table of {@link #neighbors}. */
+  private final boolean tabulated;
+
+  /**
+   * The flat index of each cell's neighbor in each direction, or {@link #WALL}, at index {@code
+   * cell * DIRECTIONS.length + direction.ordinal()}, or else null until the table is first needed,
+   * and always for grids that are not {@link #tabulated}.
+   */
+  private volatile int[] neighbors;
+
+  private TerrainGrid(
+      int rows, int columns, ByteBuffer terrain, LongBuffer traversable, int traversableCount) {
+    this.rows = rows;
+    this.columns = columns;
+    this.cellCount = rows * columns;
+    this.traversableCount = traversableCount;
+    this.terrain = terrain;
+    this.traversable = traversable;
+    this.tabulated = cellCount <= MAX_TABULATED_CELLS;
+  }
+
+  /**
+   * Loads a grid from the map file at the given path. A map file has a line for each row of the
+   * grid, holding the symbol of the terrain in each column, and its dimensions are inferred from
+   * the number and length of those lines. Maps that have been converted to the binary map format
+   * are recognized as well, and are memory-mapped rather than read, which takes no heap. Either
+   * way, every cell is checked, so loading takes time proportional to the size of the map, though
+   * for a binary map that is only a single pass to validate it.
+   *
+   * @throws IllegalArgumentException if the file is not a well-formed map
+   */
+  public static TerrainGrid load(Path path) throws IOException {
+    if (BinaryTerrainFormat.isBinary(path)) {
+      return BinaryTerrainFormat.map(path);
+    }
+    try (InputStream in = Files.newInputStream(path)) {
+      return TerrainReader.read(in, Files.size(path));
+    }
+  }
+
+  /**
+   * Loads a grid from the map file with the given resource name, which is resolved by the context
+   * class loader, as in {@link Resources#getResource(String)}. Like {@link #load(Path)}, this
+   * accepts maps in either the text or the binary format, though binary maps are read into memory
+   * rather than memory-mapped, since resources need not be files.
+   *
+   * @throws IllegalArgumentException if the resource is not found or is not a well-formed map
+   */
+  public static TerrainGrid loadResource(String resourceName) throws IOException {
+    try (InputStream in =
+        new BufferedInputStream(Resources.getResource(resourceName).openStream())) {
+      return BinaryTerrainFormat.isBinary(in)
+          ? BinaryTerrainFormat.read(in)
+          : TerrainReader.read(in, -1);
+    }
+  }
+
+  /**
+   * Returns a grid of the given dimensions, with the terrain of each cell given by its ordinal in
+   * {@code terrain}, indexed by flat cell index. Only the first {@code rows * columns} bytes of the
+   * array are used, so that a caller who had to guess its size need not copy it to trim it. The
+   * grid takes ownership of the array.
+   */
+  static TerrainGrid of(int rows, int columns, byte[] terrain) {
+    checkArgument(rows > 0, "rows must be positive.");
+    checkArgument(columns > 0, "columns must be positive.");
+    long cellCount = (long) rows * columns;
+    checkArgument(
+        cellCount <= terrain.length,
+        "A %sx%s grid has %s cells, more than %s.",
+        rows,
+        columns,
+        cellCount,
+        terrain.length);
+
+    long[] traversable = new long[bitmapLength((int) cellCount)];
+    int traversableCount = 0;
+    for (int i = 0; i < cellCount; i++) {
+      checkArgument(
+          terrain[i] >= 0 && terrain[i] < TERRAIN_VALUES.length,
+          "Unknown terrain %s in cell %s.",
+          terrain[i] & 0xFF,
+          i);
+      if (TERRAIN_VALUES[terrain[i]].isTraversable()) {
+        traversable[i >>> 6] |= 1L << i;
+        traversableCount++;
+      }
+    }
+    return new TerrainGrid(
+        rows,
+        columns,
+        ByteBuffer.wrap(terrain, 0, (int) cellCount).slice(),
+        LongBuffer.wrap(traversable),
+        traversableCount);
+  }
+
+  /**
+   * Returns a grid of the given dimensions backed by the given buffers, which must not change
+   * afterwards. The contents of the buffers are trusted to be consistent with each other and with
+   * {@code traversableCount}.
+   */
+  static TerrainGrid of(
+      int rows, int columns, ByteBuffer terrain, LongBuffer traversable, int traversableCount) {
+    checkArgument(rows > 0, "rows must be positive.");
+    checkArgument(columns > 0, "columns must be positive.");
+    checkArgument((long) rows * columns == terrain.capacity(), "terrain has the wrong size.");
+    checkArgument(
+        bitmapLength(terrain.capacity()) == traversable.capacity(),
+        "traversable has the wrong size.");
+    return new TerrainGrid(rows, columns, terrain, traversable, traversableCount);
+  }
+
+  /** Returns the number of words in a traversability bitmap of the given number of cells. */
+  static int bitmapLength(int cellCount) {
+    return (int) ((cellCount + 63L) >>> 6);
+  }
+
+  /** Returns the number of rows in this grid. */
+  int rows() {
+    return rows;
+  }
+
+  /** Returns the number of columns in this grid. */
+  int columns() {
+    return columns;
+  }
+
+  /** Returns the total number of cells in this grid. */
+  int cellCount() {
+    return cellCount;
+  }
+
+  /**
+   * Returns the number of bytes of memory that this grid holds on to once it is in use: its
+   * terrain, its traversability bitmap and its table of neighbors, if it keeps one, whether or not
+   * that has been built yet.
+   */
+  long retainedBytes() {
+    return terrain.capacity()
+        + (long) traversable.capacity() * Long.BYTES
+        + (tabulated ? (long) cellCount * DIRECTIONS.length * Integer.BYTES : 0);
+  }
+
+  /** Returns the flat index of the cell at the specified position. */
+  int cellIndex(int row, int column) {
+    return row * columns + column;
+  }
+
+  /** Returns the terrain located at the specified position. */
+  Terrain terrainAt(int row, int column) {
+    return terrainAt(cellIndex(row, column));
+  }
+
+  /** Returns the terrain of the cell with the specified flat index. */
+  Terrain terrainAt(int cellIndex) {
+    return TERRAIN_VALUES[terrain.get(cellIndex)];
+  }
+
+  /** Returns whether the cell with the specified flat index is {@link Terrain#isTraversable()}. */
+  boolean isTraversable(int cellIndex) {
+    return (traversable.get(cellIndex >>> 6) & (1L << cellIndex)) != 0;
+  }
+
+  /** Returns the number of cells in this grid that are {@link Terrain#isTraversable()}. */
+  int traversableCount() {
+    return traversableCount;
+  }
+
+  /**
+   * Returns the flat index of the cell adjacent to the given cell in the given direction, wrapping
+   * around the edges of the grid, or else {@link #WALL} if that cell is not {@link
+   * Terrain#isTraversable() traversable}.
+   */
+  int neighbor(int cellIndex, Direction direction) {
+    int[] neighbors = this.neighbors;
+    if (neighbors == null) {
+      if (!tabulated) {
+        return computeNeighbor(cellIndex / columns, cellIndex % columns, direction);
+      }
+      neighbors = neighbors();
+    }
+    return neighbors[cellIndex * DIRECTIONS.length + direction.ordinal()];
+  }
+
+  /** Returns {@link #neighbors}, building it if no thread has yet. */
+  private synchronized int[] neighbors() {
+    if (neighbors == null) {
+      neighbors = computeNeighbors();
+    }
+    return neighbors;
+  }
+
+  /** Computes the contents of {@link #neighbors}. */
+  private int[] computeNeighbors() {
+    int[] neighbors = new int[cellCount() * DIRECTIONS.length];
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        for (Direction direction : DIRECTIONS) {
+          neighbors[cellIndex(row, column) * DIRECTIONS.length + direction.ordinal()] =
+              computeNeighbor(row, column, direction);
+        }
+      }
+    }
+    return neighbors;
+  }
+
+  /** Computes {@link #neighbor(int, Direction)} for the cell at the specified position. */
+  private int computeNeighbor(int row, int column, Direction direction) {
+    int neighbor =
+        cellIndex(
+            Math.floorMod(row + direction.rowOffset(), rows),
+            Math.floorMod(column + direction.columnOffset(), columns));
+    return isTraversable(neighbor) ? neighbor : WALL;
+  }
+
+  /**
+   * Returns a new {@link Builder} for a grid of the given dimensions. Every cell of the grid is
+   * initially {@link Terrain#FIELD}.
+   */
+  static Builder builder(int rows, int columns) {
+    checkArgument(rows > 0, "rows must be positive.");
+    checkArgument(columns > 0, "columns must be positive.");
+    return new Builder(rows, columns);
+  }
+
+  /** Builder class for creating terrain grids. */
+  static final class Builder {
+
+    private final int rows;
+    private final int columns;
+    private final byte[] terrain;
+
+    private Builder(int rows, int columns) {
+      this.rows = rows;
+      this.columns = columns;
+      this.terrain = new byte[Math.multiplyExact(rows, columns)];
+      Arrays.fill(terrain, (byte) Terrain.FIELD.ordinal());
+    }
+
+    /** Sets the terrain of the cell at the specified position. */
+    Builder set(int row, int column, Terrain terrain) {
+      checkNotNull(terrain);
+      this.terrain[row * columns + column] = (byte) terrain.ordinal();
+      return this;
+    }
+
+    /** Returns a new terrain grid. */
+    TerrainGrid build() {
+      return of(rows, columns, terrain.clone());
+    }
+  }
+}
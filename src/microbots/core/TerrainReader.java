@@ -0,0 +1,123 @@
+package microbots.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Parses maps in their text format into a {@link TerrainGrid}. A map is a sequence of lines, one
+ * per row, in which each character is the {@link Terrain#forSymbol(char) symbol} of the terrain in
+ * the corresponding column. Every line must have the same length, and the dimensions of the grid
+ * are inferred from the number and length of the lines. Lines may end with either {@code \n} or
+ * {@code \r\n}, and the last line need not end with a line break at all.
+ *
+ * <p>Input is consumed as a stream of bytes, a chunk at a time, and each byte is translated to
+ * terrain through a lookup table. When the size of the input is known, the grid is parsed straight
+ * into an array of that size, which becomes the grid itself, so that the only memory proportional
+ * to the size of the map is one byte per cell plus one per line break. Otherwise, the array grows
+ * by doubling as the input is read, which briefly holds two copies of what has been read so far
+ * whenever it does.
+ */
+final class TerrainReader {
+
+  private static final int CHUNK_SIZE = 1 << 16;
+  private static final int DEFAULT_CAPACITY = 1 << 12;
+
+  /** The value in {@link #TERRAIN_BY_SYMBOL} of a symbol that doesn't belong to any terrain. */
+  private static final byte NO_TERRAIN = -1;
+
+  /** The ordinal of each terrain, indexed by its symbol, or else {@link #NO_TERRAIN}. */
+  private static final byte[] TERRAIN_BY_SYMBOL = terrainBySymbol();
+
+  private final byte[] chunk = new byte[CHUNK_SIZE];
+
+  /** The terrain of every cell read so far, in the order of their flat indices. */
+  private byte[] cells;
+
+  private int cellCount;
+  private int rows;
+  private int columns = -1;
+  private int column;
+
+  private TerrainReader(int capacity) {
+    this.cells = new byte[capacity];
+  }
+
+  /**
+   * Reads a map from the given stream, which is read to its end but not closed. {@code
+   * sizeHint} is an estimate of the number of bytes in the stream, or else a non-positive number if
+   * it is not known; it only determines how much memory is allocated up front.
+   *
+   * @throws IllegalArgumentException if the stream does not contain a well-formed map
+   */
+  static TerrainGrid read(InputStream in, long sizeHint) throws IOException {
+    int capacity =
+        sizeHint > 0 ? (int) Math.min(sizeHint, Integer.MAX_VALUE - 8) : DEFAULT_CAPACITY;
+    return new TerrainReader(capacity).readFully(in);
+  }
+
+  private TerrainGrid readFully(InputStream in) throws IOException {
+    for (int length = in.read(chunk); length != -1; length = in.read(chunk)) {
+      for (int i = 0; i < length; i++) {
+        byte symbol = chunk[i];
+        if (symbol == '\n') {
+          endRow();
+        } else if (symbol != '\r') {
+          addCell(symbol);
+        }
+      }
+    }
+    if (column > 0) {
+      endRow();
+    }
+    checkArgument(rows > 0, "Map is empty.");
+
+    return TerrainGrid.of(rows, columns, cells);
+  }
+
+  private void addCell(byte symbol) {
+    byte terrain = TERRAIN_BY_SYMBOL[symbol & 0xFF];
+    checkArgument(
+        terrain != NO_TERRAIN,
+        "No such terrain exists with symbol '%s', at row %s, column %s.",
+        (char) (symbol & 0xFF),
+        rows,
+        column);
+    checkArgument(
+        columns == -1 || column < columns,
+        "Map row %s is longer than the %s columns of the rows before it.",
+        rows,
+        columns);
+
+    if (cellCount == cells.length) {
+      checkArgument(cellCount < Integer.MAX_VALUE - 8, "Map has too many cells.");
+      cells = Arrays.copyOf(cells, (int) Math.min(2L * cellCount, Integer.MAX_VALUE - 8));
+    }
+    cells[cellCount++] = terrain;
+    column++;
+  }
+
+  private void endRow() {
+    if (columns == -1) {
+      checkArgument(column > 0, "Map row 0 is empty.");
+      columns = column;
+    }
+    checkArgument(
+        column == columns, "Map row %s has length %s, expected %s.", rows, column, columns);
+    rows++;
+    column = 0;
+  }
+
+  private static byte[] terrainBySymbol() {
+    byte[] terrainBySymbol = new byte[Terrain.SYMBOL_COUNT];
+    for (int symbol = 0; symbol < terrainBySymbol.length; symbol++) {
+      terrainBySymbol[symbol] =
+          Terrain.forSymbol((char) symbol)
+              .map(terrain -> (byte) terrain.ordinal())
+              .orElse(NO_TERRAIN);
+    }
+    return terrainBySymbol;
+  }
+}
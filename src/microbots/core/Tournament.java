@@ -0,0 +1,347 @@
+package microbots.core;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+import microbots.MicrobotProcessingUnit;
+
+/**
+ * Runs many headless battles between a set of MPU types and aggregates the outcomes. Example usage:
+ *
+ * <pre>
+ *   TournamentResult result =
+ *       Tournament.builder()
+ *           .addMpuType(Microbot9000.class)
+ *           .addMpuType(MicrobotPrime.class)
+ *           .addMpuType(Hive.class)
+ *           .setFormat(Tournament.Format.ROUND_ROBIN)
+ *           .addSeed(42L)
+ *           .setRepetitions(100)
+ *           .run();
+ * </pre>
+ */
+public final class Tournament {
+
+  /** How MPU types are matched up against each other. */
+  public enum Format {
+    /** Every pair of MPU types fights a separate battle. */
+    ROUND_ROBIN,
+
+    /** All MPU types fight in the same battle. */
+    FREE_FOR_ALL
+  }
+
+  private final ImmutableList<Battle> battles;
+  private final ImmutableMap<Class<? extends MicrobotProcessingUnit>, String> mpuNames;
+  private final int populationSize;
+  private final int maxRounds;
+  private final int threads;
+
+  private Tournament(
+      ImmutableList<Battle> battles,
+      ImmutableMap<Class<? extends MicrobotProcessingUnit>, String> mpuNames,
+      int populationSize,
+      int maxRounds,
+      int threads) {
+    this.battles = battles;
+    this.mpuNames = mpuNames;
+    this.populationSize = populationSize;
+    this.maxRounds = maxRounds;
+    this.threads = threads;
+  }
+
+  /**
+   * Runs every battle of this tournament on a pool of {@link #threads} threads and blocks until all
+   * of them are done. Outcomes are aggregated in battle order, so the result does not depend on
+   * scheduling.
+   */
+  private TournamentResult run() {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<SimulationResult>> futures = new ArrayList<>(battles.size());
+      for (Battle battle : battles) {
+        futures.add(executor.submit(() -> battle.run(populationSize, maxRounds)));
+      }
+
+      TournamentResult.Builder result = TournamentResult.builder(populationSize);
+      for (int i = 0; i < battles.size(); i++) {
+        ImmutableSet<String> participants =
+            battles
+                .get(i)
+                .mpuTypes()
+                .stream()
+                .map(mpuNames::get)
+                .collect(toImmutableSet());
+        result.addBattle(participants, futures.get(i).get());
+      }
+      return result.build();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Returns a new {@link Builder} for configuring tournaments. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * A single battle between a set of MPU types on a given map. The map's terrain is a function of
+   * the battle's seed, so that generated maps can differ from battle to battle. It is only resolved
+   * when the battle is run, on a tournament worker thread.
+   */
+  private static final class Battle {
+
+    private final ImmutableList<Class<? extends MicrobotProcessingUnit>> mpuTypes;
+    private final LongFunction<TerrainGrid> map;
+    private final long seed;
+
+    private Battle(
+        ImmutableList<Class<? extends MicrobotProcessingUnit>> mpuTypes,
+        LongFunction<TerrainGrid> map,
+        long seed) {
+      this.mpuTypes = mpuTypes;
+      this.map = map;
+      this.seed = seed;
+    }
+
+    ImmutableList<Class<? extends MicrobotProcessingUnit>> mpuTypes() {
+      return mpuTypes;
+    }
+
+    SimulationResult run(int populationSize, int maxRounds) {
+      return Simulation.builder()
+          .setPopulationSize(populationSize)
+          .setTerrain(map.apply(seed))
+          .setSeed(seed)
+          .addMpuTypes(mpuTypes)
+          .runHeadless(maxRounds);
+    }
+  }
+
+  /** Builder class for configuring tournaments. */
+  public static final class Builder {
+
+    private static final int DEFAULT_MAX_ROUNDS = 10_000;
+
+    private final LinkedHashSet<Class<? extends MicrobotProcessingUnit>> mpuTypes =
+        new LinkedHashSet<>();
+    private final LinkedHashSet<Long> seeds = new LinkedHashSet<>();
+
+    /** The maps that every matchup is fought on, or null to fight on every {@link ArenaMap}. */
+    private ImmutableList<LongFunction<TerrainGrid>> maps;
+
+    private Format format = Format.ROUND_ROBIN;
+    private int populationSize = SimulationDefaults.POPULATION_SIZE;
+    private int maxRounds = DEFAULT_MAX_ROUNDS;
+    private int repetitions = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private Builder() {}
+
+    // PUBLIC API
+
+    /** Adds a new {@link MicrobotProcessingUnit MPU type} to compete in the tournament. */
+    public Builder addMpuType(Class<? extends MicrobotProcessingUnit> mpuType) {
+      mpuTypes.add(checkNotNull(mpuType));
+      return this;
+    }
+
+    /** Sets how MPU types are matched up. Defaults to {@link Format#ROUND_ROBIN}. */
+    public Builder setFormat(Format format) {
+      this.format = checkNotNull(format);
+      return this;
+    }
+
+    /**
+     * Sets the number of microbots of each type in every battle. Must be positive. Defaults to
+     * {@link SimulationDefaults#POPULATION_SIZE}.
+     */
+    public Builder setPopulationSize(int populationSize) {
+      checkArgument(populationSize > 0, "populationSize must be positive.");
+      this.populationSize = populationSize;
+      return this;
+    }
+
+    /**
+     * Sets the number of rounds after which a battle is declared a draw. Must be positive. Defaults
+     * to 10,000.
+     */
+    public Builder setMaxRounds(int maxRounds) {
+      checkArgument(maxRounds > 0, "maxRounds must be positive.");
+      this.maxRounds = maxRounds;
+      return this;
+    }
+
+    /**
+     * Adds a seed to the tournament. Every matchup is fought {@link #setRepetitions(int)} times per
+     * seed on every map, with the seed of each repetition derived from this one. If no seeds are
+     * added, a random one is chosen.
+     */
+    public Builder addSeed(long seed) {
+      seeds.add(seed);
+      return this;
+    }
+
+    /** Sets the number of battles fought per matchup, map and seed. Must be positive. */
+    public Builder setRepetitions(int repetitions) {
+      checkArgument(repetitions > 0, "repetitions must be positive.");
+      this.repetitions = repetitions;
+      return this;
+    }
+
+    /**
+     * Sets the number of battles that may run concurrently. Must be positive. Defaults to the
+     * number of available processors.
+     */
+    public Builder setThreads(int threads) {
+      checkArgument(threads > 0, "threads must be positive.");
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * Has every matchup fought on each of the given terrains instead of on the built-in maps.
+     * Replaces any maps set before.
+     */
+    public Builder setTerrains(List<TerrainGrid> terrains) {
+      ImmutableList.Builder<LongFunction<TerrainGrid>> maps = ImmutableList.builder();
+      for (TerrainGrid terrain : terrains) {
+        checkNotNull(terrain);
+        maps.add(seed -> terrain);
+      }
+      this.maps = maps.build();
+      checkArgument(!this.maps.isEmpty(), "terrains must not be empty.");
+      return this;
+    }
+
+    /**
+     * Has every battle fought on a map from the given generator instead of on the built-in maps.
+     * Each seed and repetition gets a map of its own, which is shared by every matchup. Density
+     * must be between zero and one, inclusive.
+     */
+    public Builder setGeneratedMap(MapGenerator generator, int rows, int columns, double density) {
+      checkNotNull(generator);
+      checkArgument(rows > 0, "rows must be positive.");
+      checkArgument(columns > 0, "columns must be positive.");
+      checkArgument(density >= 0 && density <= 1, "density must be between zero and one.");
+      this.maps = ImmutableList.of(seed -> generator.generate(rows, columns, density, seed));
+      return this;
+    }
+
+    /** Runs every battle of the tournament, blocking until they are done. */
+    public TournamentResult run() {
+      checkState(mpuTypes.size() >= 2, "A tournament needs at least two MPU types.");
+      return new Tournament(createBattles(), resolveMpuNames(), populationSize, maxRounds, threads)
+          .run();
+    }
+
+    // PUBLIC API ENDS HERE. Below this point is the internal API.
+
+    /** Sets the maps that every matchup is fought on. Defaults to every {@link ArenaMap}. */
+    Builder setArenaMaps(Iterable<ArenaMap> arenaMaps) {
+      this.maps = toMaps(arenaMaps);
+      checkArgument(!this.maps.isEmpty(), "arenaMaps must not be empty.");
+      return this;
+    }
+
+    /** Returns the maps that every matchup is fought on, as functions of the battle seed. */
+    private ImmutableList<LongFunction<TerrainGrid>> createMaps() {
+      return maps != null ? maps : toMaps(ImmutableList.copyOf(ArenaMap.values()));
+    }
+
+    /**
+     * Returns a function of the battle seed for each of the given maps, which loads its terrain
+     * only when a battle on it is run.
+     */
+    private static ImmutableList<LongFunction<TerrainGrid>> toMaps(Iterable<ArenaMap> arenaMaps) {
+      ImmutableList.Builder<LongFunction<TerrainGrid>> maps = ImmutableList.builder();
+      for (ArenaMap arenaMap : arenaMaps) {
+        maps.add(seed -> arenaMap.terrain());
+      }
+      return maps.build();
+    }
+
+    /** Returns every battle of the tournament, ordered by matchup, map, seed and repetition. */
+    private ImmutableList<Battle> createBattles() {
+      ImmutableList<Long> seeds =
+          this.seeds.isEmpty()
+              ? ImmutableList.of(new SplittableRandom().nextLong())
+              : ImmutableList.copyOf(this.seeds);
+
+      ImmutableList<LongFunction<TerrainGrid>> maps = createMaps();
+      ImmutableList.Builder<Battle> battles = ImmutableList.builder();
+      for (ImmutableList<Class<? extends MicrobotProcessingUnit>> matchup : createMatchups()) {
+        for (LongFunction<TerrainGrid> map : maps) {
+          for (long seed : seeds) {
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < repetitions; i++) {
+              battles.add(new Battle(matchup, map, random.nextLong()));
+            }
+          }
+        }
+      }
+      return battles.build();
+    }
+
+    /** Returns the sets of MPU types that fight each other, according to {@link #format}. */
+    private ImmutableList<ImmutableList<Class<? extends MicrobotProcessingUnit>>>
+        createMatchups() {
+      ImmutableList<Class<? extends MicrobotProcessingUnit>> mpuTypes =
+          ImmutableList.copyOf(this.mpuTypes);
+      if (format == Format.FREE_FOR_ALL) {
+        return ImmutableList.of(mpuTypes);
+      }
+
+      ImmutableList.Builder<ImmutableList<Class<? extends MicrobotProcessingUnit>>> matchups =
+          ImmutableList.builder();
+      for (int i = 0; i < mpuTypes.size(); i++) {
+        for (int j = i + 1; j < mpuTypes.size(); j++) {
+          matchups.add(ImmutableList.of(mpuTypes.get(i), mpuTypes.get(j)));
+        }
+      }
+      return matchups.build();
+    }
+
+    /**
+     * Returns the display name of each MPU type, which is how they are identified in {@link
+     * SimulationResult simulation results}. Names must be unique, or else the outcomes of different
+     * MPU types would be merged.
+     */
+    private ImmutableMap<Class<? extends MicrobotProcessingUnit>, String> resolveMpuNames() {
+      ImmutableMap.Builder<Class<? extends MicrobotProcessingUnit>, String> names =
+          ImmutableMap.builder();
+      Map<String, Class<? extends MicrobotProcessingUnit>> mpuTypesByName = new HashMap<>();
+      for (Class<? extends MicrobotProcessingUnit> mpuType : mpuTypes) {
+        String name =
+            firstNonNull(MicrobotFactory.newMpu(mpuType).name(), mpuType.getSimpleName());
+        Class<? extends MicrobotProcessingUnit> other = mpuTypesByName.put(name, mpuType);
+        checkState(other == null, "%s and %s are both named %s.", other, mpuType, name);
+        names.put(mpuType, name);
+      }
+      return names.build();
+    }
+  }
+}
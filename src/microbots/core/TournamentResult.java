@@ -0,0 +1,166 @@
+package microbots.core;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.Set;
+
+/** The aggregated outcome of every battle in a {@link Tournament}. */
+public final class TournamentResult {
+
+  private final ImmutableMap<String, Standing> standings;
+  private final int battles;
+
+  private TournamentResult(ImmutableMap<String, Standing> standings, int battles) {
+    this.standings = standings;
+    this.battles = battles;
+  }
+
+  /** Returns the standing of each microbot type, keyed by microbot name. */
+  public ImmutableMap<String, Standing> standings() {
+    return standings;
+  }
+
+  /** Returns the total number of battles that were fought. */
+  public int battles() {
+    return battles;
+  }
+
+  /** Returns a new {@link Builder} for aggregating battles with the given population size. */
+  static Builder builder(int populationSize) {
+    return new Builder(populationSize);
+  }
+
+  /** The tournament record of a single microbot type. */
+  public static final class Standing {
+
+    private final String name;
+    private final int battles;
+    private final int wins;
+    private final double meanSurvival;
+    private final OptionalDouble meanRoundsToVictory;
+
+    private Standing(
+        String name,
+        int battles,
+        int wins,
+        double meanSurvival,
+        OptionalDouble meanRoundsToVictory) {
+      this.name = name;
+      this.battles = battles;
+      this.wins = wins;
+      this.meanSurvival = meanSurvival;
+      this.meanRoundsToVictory = meanRoundsToVictory;
+    }
+
+    /** Returns the name of this microbot type. */
+    public String name() {
+      return name;
+    }
+
+    /** Returns the number of battles this microbot type took part in. */
+    public int battles() {
+      return battles;
+    }
+
+    /** Returns the number of battles in which this microbot type was the only one left. */
+    public int wins() {
+      return wins;
+    }
+
+    /** Returns the fraction of battles won, in the range {@code [0, 1]}. */
+    public double winRate() {
+      return battles == 0 ? 0 : (double) wins / battles;
+    }
+
+    /**
+     * Returns the mean final population of this microbot type relative to its starting population.
+     * This can exceed 1, since microbots grow their population by hacking.
+     */
+    public double meanSurvival() {
+      return meanSurvival;
+    }
+
+    /**
+     * Returns the mean number of rounds this microbot type needed to win, or else {@link
+     * OptionalDouble#empty()} if it never won.
+     */
+    public OptionalDouble meanRoundsToVictory() {
+      return meanRoundsToVictory;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: %d/%d wins (%.1f%%), mean survival %.3f, mean rounds to victory %s",
+          name,
+          wins,
+          battles,
+          100 * winRate(),
+          meanSurvival,
+          meanRoundsToVictory.isPresent()
+              ? String.format("%.1f", meanRoundsToVictory.getAsDouble())
+              : "n/a");
+    }
+  }
+
+  /** Builder class that accumulates battle outcomes into a result. */
+  static final class Builder {
+
+    private final int populationSize;
+    private final LinkedHashMap<String, Tally> tallies = new LinkedHashMap<>();
+    private int battles;
+
+    private Builder(int populationSize) {
+      this.populationSize = populationSize;
+    }
+
+    /** Records the outcome of one battle between the given microbot types. */
+    Builder addBattle(Set<String> participants, SimulationResult result) {
+      battles++;
+      for (String name : participants) {
+        Tally tally = tallies.computeIfAbsent(name, unused -> new Tally());
+        tally.battles++;
+        tally.survivalSum += (double) result.populations().getOrDefault(name, 0) / populationSize;
+        if (result.winner().map(name::equals).orElse(false)) {
+          tally.wins++;
+          tally.roundsToVictorySum += result.roundsExecuted();
+        }
+      }
+      return this;
+    }
+
+    /** Returns a new result from the battles recorded so far. */
+    TournamentResult build() {
+      return new TournamentResult(
+          tallies
+              .entrySet()
+              .stream()
+              .collect(toImmutableMap(Map.Entry::getKey, Builder::toStanding)),
+          battles);
+    }
+
+    private static Standing toStanding(Map.Entry<String, Tally> entry) {
+      Tally tally = entry.getValue();
+      return new Standing(
+          entry.getKey(),
+          tally.battles,
+          tally.wins,
+          tally.survivalSum / tally.battles,
+          tally.wins == 0
+              ? OptionalDouble.empty()
+              : OptionalDouble.of((double) tally.roundsToVictorySum / tally.wins));
+    }
+  }
+
+  /** Running totals for a single microbot type. */
+  private static final class Tally {
+    int battles;
+    int wins;
+    double survivalSum;
+    long roundsToVictorySum;
+  }
+}
@@ -2,18 +2,24 @@ package microbots.core;
 
 import com.google.common.eventbus.Subscribe;
 import java.awt.Component;
+import java.awt.DisplayMode;
 import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
 import java.util.Collection;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import microbots.MicrobotProcessingUnit;
 import microbots.core.Events.SimulationRoundDoneEvent;
+import microbots.core.Events.SimulationRoundDoneListener;
 import microbots.core.Events.SimulationRunCalledEvent;
 import microbots.core.Events.WindowRepaintDoneEvent;
 
 /** The window holds UI components that show the simulation as it runs. */
-final class Window extends JFrame {
+final class Window extends JFrame implements SimulationRoundDoneListener {
 
   private static final String WINDOW_TITLE = "Microbot Battle Arena";
+  private static final int DEFAULT_REFRESH_RATE_HZ = 60;
 
   private Component windowPanel;
 
@@ -22,18 +28,25 @@ final class Window extends JFrame {
   @Override
   public void paint(Graphics g) {
     super.paint(g);
-    Events.post(new WindowRepaintDoneEvent());
+    Events.post(WindowRepaintDoneEvent.INSTANCE);
   }
 
-  @Subscribe
+  @Override
   public void onSimulationRoundDone(SimulationRoundDoneEvent event) {
     repaint();
   }
 
   @Subscribe
   public void onSimulationRunCalled(SimulationRunCalledEvent event) {
+    // This is called on the simulation's thread, but Swing components may only be touched on the
+    // event dispatch thread.
+    SwingUtilities.invokeLater(() -> showSimulation(event.simulation()));
+  }
+
+  /** Replaces the contents of this window with views of the given simulation. */
+  private void showSimulation(Simulation simulation) {
     Component oldWindowPanel = windowPanel;
-    windowPanel = add(WindowPanel.createFor(event.simulation().arena()));
+    windowPanel = add(WindowPanel.createFor(simulation.arena()));
     if (oldWindowPanel != null) {
       remove(oldWindowPanel);
     }
@@ -54,5 +67,21 @@ final class Window extends JFrame {
     window.setJMenuBar(WindowMenuBar.create(selectedMpuTypes, populationSize));
 
     Events.register(window);
+
+    // Simulations that do not wait for repaints never ask for one, so the window also repaints
+    // itself once per display refresh, showing whichever round was most recently published.
+    new Timer(1000 / displayRefreshRateHz(), event -> window.repaint()).start();
+  }
+
+  /** Returns the refresh rate of the default screen, or a typical rate if it is unknown. */
+  private static int displayRefreshRateHz() {
+    int refreshRateHz =
+        GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice()
+            .getDisplayMode()
+            .getRefreshRate();
+    return refreshRateHz == DisplayMode.REFRESH_RATE_UNKNOWN
+        ? DEFAULT_REFRESH_RATE_HZ
+        : refreshRateHz;
   }
 }
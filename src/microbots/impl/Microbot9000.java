@@ -5,8 +5,10 @@ import microbots.Action;
 import microbots.MicrobotProcessingUnit;
 import microbots.Obstacle;
 import microbots.State;
+import microbots.Stateless;
 import microbots.Surroundings;
 
+@Stateless
 public final class Microbot9000 extends MicrobotProcessingUnit {
   @Override
   public Color color() {
@@ -6,12 +6,18 @@ import microbots.Direction;
 import microbots.MicrobotProcessingUnit;
 import microbots.Obstacle;
 import microbots.State;
+import microbots.Stateless;
 import microbots.Surroundings;
 
 /**
  * Example MPU implementation for reference when creating your own bot. This bot does nothing! It
  * serves as scrap for other bots to hack.
+ *
+ * <p>This bot keeps no state between actions, so it is annotated with {@link Stateless}, which lets
+ * the simulation share a single instance among all scrap piles. Leave the annotation off if your
+ * bot has fields that change as it runs.
  */
+@Stateless
 public final class ScrapPile extends MicrobotProcessingUnit {
 
   /**